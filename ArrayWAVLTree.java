@@ -0,0 +1,610 @@
+import java.util.Arrays;
+
+/**
+ *
+ * ArrayWAVLTree
+ *
+ * A struct-of-arrays implementation of a WAVL Tree, with the same public
+ * API as WAVLTree. Instead of one WAVLNode object per item, every node is a
+ * slot index into parallel primitive arrays (key, size, left, right,
+ * parent) plus one String array for the values.
+ *
+ * ranks are not stored. rebalancing only needs each child's rank difference,
+ * which is 1 or 2 in a WAVL tree, so every slot keeps two bits, "left child
+ * is a 2-child" and "right child is a 2-child", in the top bits of its size
+ * entry. the case checks of insert and delete read these bits directly,
+ * and the transient differences 0 and 3 are tracked in local variables.
+ * a leaf has both bits clear (rank 0, EXT has rank -1).
+ *
+ * slot 0 is EXT, the external leaf (size 0), never written. the parent of
+ * the root is NIL. slots freed by delete are kept in a free list threaded
+ * through left[].
+ *
+ */
+
+public class ArrayWAVLTree {
+
+	/**
+	 * static external leaf slot. its fields are never written.
+	 */
+	public static final int EXT = 0;
+	/**
+	 * parent index of the root
+	 */
+	public static final int NIL = -1;
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	/**
+	 * size[] layout: bit 31 - left child is a 2-child, bit 30 - right child
+	 * is a 2-child, bits 0..29 - subtree size
+	 */
+	private static final int LEFT_DIFF2 = 1 << 31;
+	private static final int RIGHT_DIFF2 = 1 << 30;
+	private static final int SIZE_MASK = RIGHT_DIFF2 - 1;
+	/**
+	 * the largest number of items, so that sizes fit in 30 bits
+	 */
+	public static final int MAX_CAPACITY = SIZE_MASK;
+
+	private int[] key;
+	private int[] size;
+	private int[] left;
+	private int[] right;
+	private int[] parent;
+	private String[] value;
+
+	private int root = EXT;
+	private int nextSlot = 1; // first slot never used
+	private int freeList = NIL; // head of freed slots, linked by left[]
+
+	/**
+	 * constructor of an empty tree with EXT as root
+	 */
+	public ArrayWAVLTree() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @pre 0 <= capacity <= MAX_CAPACITY
+	 * @post no reallocation until more than capacity items are inserted
+	 */
+	public ArrayWAVLTree(int capacity) {
+		if (capacity < 0 || capacity > MAX_CAPACITY) {
+			throw new IllegalArgumentException("capacity out of range: " + capacity);
+		}
+		int slots = capacity + 1;
+		key = new int[slots];
+		size = new int[slots];
+		left = new int[slots];
+		right = new int[slots];
+		parent = new int[slots];
+		value = new String[slots];
+		parent[EXT] = NIL;
+	}
+
+	/**
+	 * public boolean empty()
+	 *
+	 * @return: true iff the tree is empty
+	 */
+	public boolean empty() {
+		return (root == EXT);
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of nodes in the tree.
+	 */
+	public int size() {
+		return sizeOf(root);
+	}
+
+	private int sizeOf(int node) {
+		return size[node] & SIZE_MASK;
+	}
+
+	private void setSizeOf(int node, int count) {
+		size[node] = (size[node] & ~SIZE_MASK) | count;
+	}
+
+	/**
+	 * @return rank(node) - rank(child), 1 or 2, of node's left (leftSide) or
+	 *         right child
+	 */
+	private int diff(int node, boolean leftSide) {
+		return ((size[node] & (leftSide ? LEFT_DIFF2 : RIGHT_DIFF2)) != 0) ? 2 : 1;
+	}
+
+	/**
+	 * @pre node != EXT, d is 1 or 2
+	 */
+	private void setDiff(int node, boolean leftSide, int d) {
+		int bit = leftSide ? LEFT_DIFF2 : RIGHT_DIFF2;
+		size[node] = (d == 2) ? (size[node] | bit) : (size[node] & ~bit);
+	}
+
+	private void setDiffs(int node, int leftDiff, int rightDiff) {
+		setDiff(node, true, leftDiff);
+		setDiff(node, false, rightDiff);
+	}
+
+	/**
+	 * public String search(int k)
+	 *
+	 * @return info of an item with key k ,if it exists in the tree
+	 * otherwise, returns null
+	 */
+	public String search(int k) {
+		int node = searchSlot(k);
+		if (node == EXT || key[node] != k) {
+			return null;
+		}
+		return value[node];
+	}
+
+	/**
+	 * @return: EXT if the tree is empty, otherwise the slot with key k, if
+	 *        exists, or the slot that will be parent of an inserted k
+	 */
+	private int searchSlot(int k) {
+		int current = root;
+		if (current == EXT) {
+			return EXT;
+		}
+		while (true) {
+			int currentKey = key[current];
+			if (currentKey == k) {
+				return current;
+			}
+			int next = (k > currentKey) ? right[current] : left[current];
+			if (next == EXT) {
+				return current;
+			}
+			current = next;
+		}
+	}
+
+	/**
+	 * public int insert(int k, String i)
+	 *
+	 * inserts an item with key k and info i to the WAVL tree. the tree must
+	 * remain valid (keep its invariants). returns the number of rebalancing
+	 * operations, or 0 if no rebalancing operations were necessary. returns -1
+	 * if an item with key k already exists in the tree.
+	 */
+	public int insert(int k, String i) {
+		if (empty()) {
+			root = allocate(k, i);
+			parent[root] = NIL;
+			return 0;
+		}
+
+		int insertTo = searchSlot(k);
+		if (key[insertTo] == k) {
+			return -1;
+		}
+
+		int node = allocate(k, i);
+		parent[node] = insertTo;
+		if (k > key[insertTo]) {
+			right[insertTo] = node;
+		} else {
+			left[insertTo] = node;
+		}
+		addSizeToRoot(insertTo, 1);
+
+		return insertRebalance(node);
+	}
+
+	/**
+	 * bottom up rebalancing after node was linked as a new leaf.
+	 * sizes on the path are already up to date, rotations keep them so.
+	 *
+	 * @return number of promotions, demotions and rotations
+	 */
+	private int insertRebalance(int node) {
+		int ops = 0;
+		int par = parent[node];
+		boolean isLeft = (left[par] == node);
+
+		// node's rank went up by one (a new leaf: from EXT's -1 to 0), so its
+		// difference drops from the stored one
+		while (diff(par, isLeft) == 1) {
+			// node is a 0-child
+			if (diff(par, !isLeft) == 2) {
+				break; // sibling is a 2-child: rotate below
+			}
+			// case 1 - (0,1) parent: promote and bubble up
+			setDiff(par, isLeft, 1);
+			setDiff(par, !isLeft, 2);
+			ops++;
+			node = par;
+			par = parent[node];
+			if (par == NIL) {
+				return ops;
+			}
+			isLeft = (left[par] == node);
+		}
+
+		if (diff(par, isLeft) == 2) {
+			setDiff(par, isLeft, 1); // 2 - 1, valid
+			return ops;
+		}
+
+		// node is a 0-child, its sibling a 2-child. node was promoted by
+		// case 1, so its children are a 1-child and a 2-child
+		int inner = isLeft ? right[node] : left[node];
+
+		if (diff(node, !isLeft) == 2) {
+			// case 2 - single rotation: node and par become (1,1) nodes
+			rotateUp(node);
+			setDiffs(node, 1, 1);
+			setDiffs(par, 1, 1);
+			ops += 2;
+		} else {
+			// case 3 - double rotation: inner takes par's rank, node and par
+			// keep inner's former children with their differences
+			int innerNodeSide = diff(inner, isLeft);
+			int innerParSide = diff(inner, !isLeft);
+			rotateUp(inner);
+			rotateUp(inner);
+			setDiffs(inner, 1, 1);
+			setDiff(node, isLeft, 1);
+			setDiff(node, !isLeft, innerNodeSide);
+			setDiff(par, isLeft, innerParSide);
+			setDiff(par, !isLeft, 1);
+			ops += 5;
+		}
+		return ops;
+	}
+
+	/**
+	 * public int delete(int k)
+	 *
+	 * deletes an item with key k from the binary tree, if it is there; the tree
+	 * must remain valid (keep its invariants). returns the number of
+	 * rebalancing operations, or 0 if no rebalancing operations were needed.
+	 * returns -1 if an item with key k was not found in the tree.
+	 */
+	public int delete(int k) {
+		int node = searchSlot(k);
+		if (node == EXT || key[node] != k) {
+			return -1;
+		}
+
+		// binary node - move successor's item here and delete successor instead
+		if (left[node] != EXT && right[node] != EXT) {
+			int successor = right[node];
+			while (left[successor] != EXT) {
+				successor = left[successor];
+			}
+			key[node] = key[successor];
+			value[node] = value[successor];
+			node = successor;
+		}
+
+		// node has at most one child
+		boolean childIsLeft = (left[node] != EXT);
+		int child = childIsLeft ? left[node] : right[node];
+		int par = parent[node];
+		if (par == NIL) {
+			replaceChild(par, node, child);
+			release(node);
+			return 0; // deleted the root
+		}
+		boolean wasLeft = (left[par] == node);
+		// child moves up one level: its difference adds up
+		int childDiff = diff(par, wasLeft) + diff(node, childIsLeft);
+		replaceChild(par, node, child);
+		release(node);
+		addSizeToRoot(par, -1);
+
+		return deleteRebalance(child, par, wasLeft, childDiff);
+	}
+
+	/**
+	 * bottom up rebalancing after a node was unlinked from par.
+	 * node may be EXT, so its side is passed explicitly, and so is its rank
+	 * difference d (2 or 3), which is not stored yet.
+	 *
+	 * @return number of promotions, demotions and rotations
+	 */
+	private int deleteRebalance(int node, int par, boolean nodeIsLeft, int d) {
+		int ops = 0;
+
+		// 2,2 leaf (a leaf whose bits say rank 1) - demote and roll the
+		// problem up
+		if (left[par] == EXT && right[par] == EXT) {
+			setDiffs(par, 1, 1);
+			ops++;
+			node = par;
+			par = parent[node];
+			if (par == NIL) {
+				return ops;
+			}
+			nodeIsLeft = (left[par] == node);
+			d = diff(par, nodeIsLeft) + 1;
+		}
+
+		while (d == 3) {
+			int sibling = nodeIsLeft ? right[par] : left[par];
+
+			if (diff(par, !nodeIsLeft) == 2) {
+				// case 1 - (3,2): demote and bubble up
+				setDiff(par, nodeIsLeft, 2);
+				setDiff(par, !nodeIsLeft, 1);
+				ops++;
+			} else {
+				int inner = nodeIsLeft ? left[sibling] : right[sibling];
+				int innerDiff = diff(sibling, nodeIsLeft);
+				int outerDiff = diff(sibling, !nodeIsLeft);
+
+				if (innerDiff == 2 && outerDiff == 2) {
+					// case 2 - (3,1) with (2,2) sibling: double demote, bubble up
+					setDiff(par, nodeIsLeft, 2);
+					setDiff(par, !nodeIsLeft, 1);
+					setDiffs(sibling, 1, 1);
+					ops += 2;
+				} else if (outerDiff == 1) {
+					// case 3 - single rotation, terminal
+					rotateUp(sibling);
+					setDiff(sibling, nodeIsLeft, 1);
+					setDiff(sibling, !nodeIsLeft, 2);
+					setDiff(par, nodeIsLeft, 2);
+					setDiff(par, !nodeIsLeft, innerDiff);
+					ops += 3;
+					if (left[par] == EXT && right[par] == EXT) {
+						// par became a 2,2 leaf
+						setDiffs(par, 1, 1);
+						setDiff(sibling, nodeIsLeft, 2);
+						ops++;
+					}
+					return ops;
+				} else {
+					// case 4 - double rotation, terminal
+					int innerNodeSide = diff(inner, nodeIsLeft);
+					int innerSiblingSide = diff(inner, !nodeIsLeft);
+					rotateUp(inner);
+					rotateUp(inner);
+					setDiffs(inner, 2, 2);
+					setDiff(par, nodeIsLeft, 1);
+					setDiff(par, !nodeIsLeft, innerNodeSide);
+					setDiff(sibling, nodeIsLeft, innerSiblingSide);
+					setDiff(sibling, !nodeIsLeft, 1);
+					ops += 7;
+					return ops;
+				}
+			}
+			node = par;
+			par = parent[node];
+			if (par == NIL) {
+				return ops;
+			}
+			nodeIsLeft = (left[par] == node);
+			d = diff(par, nodeIsLeft) + 1;
+		}
+		setDiff(par, nodeIsLeft, d);
+		return ops;
+	}
+
+	/**
+	 * @pre node != root
+	 * @post node takes its parent's place; sizes of both are recomputed
+	 */
+	private void rotateUp(int node) {
+		int par = parent[node];
+		int grand = parent[par];
+
+		if (left[par] == node) {
+			int moved = right[node];
+			left[par] = moved;
+			if (moved != EXT) {
+				parent[moved] = par;
+			}
+			right[node] = par;
+		} else {
+			int moved = left[node];
+			right[par] = moved;
+			if (moved != EXT) {
+				parent[moved] = par;
+			}
+			left[node] = par;
+		}
+		parent[par] = node;
+		replaceChild(grand, par, node);
+
+		setSizeOf(node, sizeOf(par));
+		setSizeOf(par, 1 + sizeOf(left[par]) + sizeOf(right[par]));
+	}
+
+	/**
+	 * @post newChild is in oldChild's place under par (or is the root, if
+	 *       par == NIL)
+	 */
+	private void replaceChild(int par, int oldChild, int newChild) {
+		if (par == NIL) {
+			root = newChild;
+		} else if (left[par] == oldChild) {
+			left[par] = newChild;
+		} else {
+			right[par] = newChild;
+		}
+		if (newChild != EXT) {
+			parent[newChild] = par;
+		}
+	}
+
+	private void addSizeToRoot(int node, int delta) {
+		while (node != NIL) {
+			size[node] += delta;
+			node = parent[node];
+		}
+	}
+
+	/**
+	 * @return a fresh leaf slot holding k and i
+	 */
+	private int allocate(int k, String i) {
+		int slot;
+		if (freeList != NIL) {
+			slot = freeList;
+			freeList = left[slot];
+		} else {
+			if (nextSlot == key.length) {
+				grow();
+			}
+			slot = nextSlot++;
+		}
+		key[slot] = k;
+		value[slot] = i;
+		size[slot] = 1; // a leaf: both differences 1
+		left[slot] = EXT;
+		right[slot] = EXT;
+		return slot;
+	}
+
+	/**
+	 * @post slot is on the free list, and does not reference its value
+	 */
+	private void release(int slot) {
+		value[slot] = null;
+		left[slot] = freeList;
+		freeList = slot;
+	}
+
+	private void grow() {
+		if (key.length > MAX_CAPACITY) {
+			throw new IllegalStateException("tree is full: " + MAX_CAPACITY + " items");
+		}
+		int capacity = (int) Math.min(MAX_CAPACITY + 1L, Math.max(DEFAULT_CAPACITY, key.length * 2L));
+		key = Arrays.copyOf(key, capacity);
+		size = Arrays.copyOf(size, capacity);
+		left = Arrays.copyOf(left, capacity);
+		right = Arrays.copyOf(right, capacity);
+		parent = Arrays.copyOf(parent, capacity);
+		value = Arrays.copyOf(value, capacity);
+	}
+
+	/**
+	 * public String min()
+	 *
+	 * Returns the info of the item with the smallest key in the tree, or null
+	 * if the tree is empty
+	 */
+	public String min() {
+		if (empty()) {
+			return null;
+		}
+		int node = root;
+		while (left[node] != EXT) {
+			node = left[node];
+		}
+		return value[node];
+	}
+
+	/**
+	 * public String max()
+	 *
+	 * Returns the info of the item with the largest key in the tree, or null if
+	 * the tree is empty
+	 */
+	public String max() {
+		if (empty()) {
+			return null;
+		}
+		int node = root;
+		while (right[node] != EXT) {
+			node = right[node];
+		}
+		return value[node];
+	}
+
+	/**
+	 * public int select(int i)
+	 *
+	 * Returns the value of the i'th smallest key (return null if tree is empty,
+	 * or if i is out of range). select(1) returns the value of the minimal key.
+	 */
+	public String select(int i) {
+		if (i < 1 || i > size()) {
+			return null;
+		}
+		int node = root;
+		while (true) {
+			int nodeIndex = sizeOf(left[node]) + 1;
+			if (i == nodeIndex) {
+				return value[node];
+			} else if (i < nodeIndex) {
+				node = left[node];
+			} else {
+				i -= nodeIndex;
+				node = right[node];
+			}
+		}
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 *
+	 * Returns a sorted array which contains all keys in the tree, or an empty
+	 * array if the tree is empty.
+	 */
+	public int[] keysToArray() {
+		int[] keyArray = new int[size()];
+		int writeIndex = 0;
+		for (int node = first(); node != NIL; node = successor(node)) {
+			keyArray[writeIndex++] = key[node];
+		}
+		return keyArray;
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 *
+	 * Returns an array which contains all info in the tree, sorted by their
+	 * respective keys, or an empty array if the tree is empty.
+	 */
+	public String[] infoToArray() {
+		String[] infoArray = new String[size()];
+		int writeIndex = 0;
+		for (int node = first(); node != NIL; node = successor(node)) {
+			infoArray[writeIndex++] = value[node];
+		}
+		return infoArray;
+	}
+
+	/**
+	 * @return slot of the minimal key, or NIL if the tree is empty
+	 */
+	private int first() {
+		if (empty()) {
+			return NIL;
+		}
+		int node = root;
+		while (left[node] != EXT) {
+			node = left[node];
+		}
+		return node;
+	}
+
+	/**
+	 * @return slot of the next key in order, or NIL if node holds the maximum
+	 */
+	private int successor(int node) {
+		if (right[node] != EXT) {
+			node = right[node];
+			while (left[node] != EXT) {
+				node = left[node];
+			}
+			return node;
+		}
+		int par = parent[node];
+		while (par != NIL && right[par] == node) {
+			node = par;
+			par = parent[node];
+		}
+		return par;
+	}
+}
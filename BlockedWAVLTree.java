@@ -0,0 +1,437 @@
+import java.util.Arrays;
+
+/**
+ *
+ * BlockedWAVLTree
+ *
+ * A "fat leaf" WAVL Tree, with the same public API as WAVLTree: every tree
+ * node is a block holding a sorted run of up to blockSize keys and their
+ * values, and the WAVL rank rules apply to the blocks. every key in a
+ * block's left subtree is smaller than its first key, every key in its
+ * right subtree larger than its last key.
+ *
+ * a search follows one block reference per level, with about log2(n /
+ * blockSize) levels, and finishes with a scan of one block's key array.
+ * the scan counts the keys below k without a data dependent branch, a loop
+ * shape the JIT can unroll and vectorize. an insert allocates only when a
+ * block splits, once per blockSize / 2 inserts or so.
+ *
+ * a full block splits in two halves, the upper half going to a new block
+ * linked as its in-order successor, which is then rebalanced as a WAVL
+ * insert. appending past a full block that has no right child starts a new
+ * block instead, so ascending inserts fill blocks completely. a block that
+ * drops below blockSize / 4 keys is merged into an in-order neighbour that
+ * can take it without filling up; an empty block is removed as a WAVL
+ * delete.
+ *
+ * size counts keys, not blocks, so select(i) keeps the semantics of
+ * WAVLTree.select. links, ranks and rebalancing come from WAVLCore, with
+ * a block's key count as its weight.
+ *
+ */
+
+public class BlockedWAVLTree extends WAVLCore<BlockedWAVLTree.Block> {
+
+	public static final int DEFAULT_BLOCK_SIZE = 64;
+	/**
+	 * the smallest block size, so that the merge threshold is at least 1
+	 */
+	public static final int MIN_BLOCK_SIZE = 4;
+
+	private final int blockSize;
+	private final int mergeThreshold;
+
+	/**
+	 * constructor of an empty tree, blocks of DEFAULT_BLOCK_SIZE keys
+	 */
+	public BlockedWAVLTree() {
+		this(DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * @pre blockSize >= MIN_BLOCK_SIZE
+	 */
+	public BlockedWAVLTree(int blockSize) {
+		if (blockSize < MIN_BLOCK_SIZE) {
+			throw new IllegalArgumentException("block size below " + MIN_BLOCK_SIZE + ": " + blockSize);
+		}
+		this.blockSize = blockSize;
+		this.mergeThreshold = blockSize / 4;
+	}
+
+	/**
+	 * public int blockCount()
+	 *
+	 * Returns the number of blocks (tree nodes); size() / blockCount() is the
+	 * average fill.
+	 */
+	public int blockCount() {
+		return blockCountRec(root);
+	}
+
+	private static int blockCountRec(Block block) {
+		return (block == null) ? 0 : 1 + blockCountRec(block.left) + blockCountRec(block.right);
+	}
+
+	/**
+	 * public String search(int k)
+	 *
+	 * @return info of an item with key k ,if it exists in the tree
+	 * otherwise, returns null
+	 */
+	public String search(int k) {
+		Block block = searchBlock(k);
+		if (block == null) {
+			return null;
+		}
+		int pos = block.countBelow(k);
+		return (pos < block.count && block.keys[pos] == k) ? block.values[pos] : null;
+	}
+
+	/**
+	 * @return: null if the tree is empty, otherwise the block whose range
+	 *        holds k, if any, or the last block on the search path, which is
+	 *        where an inserted k belongs
+	 */
+	private Block searchBlock(int k) {
+		Block current = root;
+		if (current == null) {
+			return null;
+		}
+		while (true) {
+			Block next;
+			if (k < current.keys[0]) {
+				next = current.left;
+			} else if (k > current.keys[current.count - 1]) {
+				next = current.right;
+			} else {
+				return current;
+			}
+			if (next == null) {
+				return current;
+			}
+			current = next;
+		}
+	}
+
+	/**
+	 * public int insert(int k, String i)
+	 *
+	 * inserts an item with key k and info i to the WAVL tree. the tree must
+	 * remain valid (keep its invariants). returns the number of rebalancing
+	 * operations, or 0 if no rebalancing operations were necessary. returns -1
+	 * if an item with key k already exists in the tree.
+	 */
+	public int insert(int k, String i) {
+		if (empty()) {
+			Block first = new Block(blockSize);
+			first.insertAt(0, k, i);
+			first.size = 1;
+			return insertLeaf(null, false, first);
+		}
+
+		Block block = searchBlock(k);
+		int pos = block.countBelow(k);
+		if (pos < block.count && block.keys[pos] == k) {
+			return -1;
+		}
+
+		if (block.count < blockSize) {
+			block.insertAt(pos, k, i);
+			addSizeBetween(block, null, 1);
+			return 0;
+		}
+
+		// full block: split off a successor block
+		Block split = new Block(blockSize);
+		if (pos == blockSize && block.right == null) {
+			// appending: leave block full, k starts the new block
+			split.insertAt(0, k, i);
+		} else {
+			int half = blockSize / 2;
+			split.count = blockSize - half;
+			System.arraycopy(block.keys, half, split.keys, 0, split.count);
+			System.arraycopy(block.values, half, split.values, 0, split.count);
+			Arrays.fill(block.values, half, blockSize, null);
+			block.count = half;
+			// the moved keys are counted again when split is linked
+			addSizeBetween(block, null, -split.count);
+			if (pos <= half) {
+				block.insertAt(pos, k, i);
+				addSizeBetween(block, null, 1);
+			} else {
+				split.insertAt(pos - half, k, i);
+			}
+		}
+		split.size = split.count;
+		return linkSuccessor(block, split);
+	}
+
+	/**
+	 * links split as a leaf, the in-order successor of block
+	 *
+	 * @return number of rebalancing operations
+	 */
+	private int linkSuccessor(Block block, Block split) {
+		if (block.right == null) {
+			return insertLeaf(block, false, split);
+		}
+		Block par = block.right;
+		while (par.left != null) {
+			par = par.left;
+		}
+		return insertLeaf(par, true, split);
+	}
+
+	/**
+	 * public int delete(int k)
+	 *
+	 * deletes an item with key k from the binary tree, if it is there; the tree
+	 * must remain valid (keep its invariants). returns the number of
+	 * rebalancing operations, or 0 if no rebalancing operations were needed.
+	 * returns -1 if an item with key k was not found in the tree.
+	 */
+	public int delete(int k) {
+		Block block = searchBlock(k);
+		if (block == null) {
+			return -1;
+		}
+		int pos = block.countBelow(k);
+		if (pos == block.count || block.keys[pos] != k) {
+			return -1;
+		}
+		block.removeAt(pos);
+		addSizeBetween(block, null, -1);
+
+		if (block.count >= mergeThreshold) {
+			return 0;
+		}
+		if (block.count > 0) {
+			Block neighbour = mergeTarget(block);
+			if (neighbour == null) {
+				return 0;
+			}
+			int moved = block.count;
+			if (neighbour.keys[0] > block.keys[0]) {
+				neighbour.prepend(block);
+			} else {
+				neighbour.append(block);
+			}
+			block.clear();
+			addSizeBetween(block, null, -moved);
+			addSizeBetween(neighbour, null, moved);
+		}
+		return removeBlock(block);
+	}
+
+	/**
+	 * @return an in-order neighbour of block that stays below blockSize after
+	 *         taking block's keys, the smaller one if both do, or null
+	 */
+	private Block mergeTarget(Block block) {
+		int room = blockSize - block.count;
+		Block pred = predecessor(block);
+		Block succ = successor(block);
+		if (pred != null && pred.count < room && (succ == null || pred.count <= succ.count)) {
+			return pred;
+		}
+		return (succ != null && succ.count < room) ? succ : null;
+	}
+
+	/**
+	 * @pre block.count == 0, the sizes above it are up to date
+	 * @return number of rebalancing operations
+	 */
+	private int removeBlock(Block block) {
+		// binary block - take over its successor's keys and remove that
+		// (now empty) successor instead
+		if (block.left != null && block.right != null) {
+			Block successor = block.right;
+			while (successor.left != null) {
+				successor = successor.left;
+			}
+			int moved = successor.count;
+			moveItem(successor, block);
+			addSizeBetween(successor, block, -moved);
+			block = successor;
+		}
+		return unlink(block);
+	}
+
+	/**
+	 * @post to holds from's keys, and from the (empty) keys of to
+	 */
+	@Override
+	void moveItem(Block from, Block to) {
+		to.swapContents(from);
+	}
+
+	/**
+	 * public String min()
+	 *
+	 * Returns the info of the item with the smallest key in the tree, or null
+	 * if the tree is empty
+	 */
+	public String min() {
+		Block block = first();
+		return (block == null) ? null : block.values[0];
+	}
+
+	/**
+	 * public String max()
+	 *
+	 * Returns the info of the item with the largest key in the tree, or null if
+	 * the tree is empty
+	 */
+	public String max() {
+		Block block = last();
+		return (block == null) ? null : block.values[block.count - 1];
+	}
+
+	/**
+	 * public int select(int i)
+	 *
+	 * Returns the value of the i'th smallest key (return null if tree is empty,
+	 * or if i is out of range). select(1) returns the value of the minimal key.
+	 */
+	public String select(int i) {
+		if (i < 1 || i > size()) {
+			return null;
+		}
+		Block block = root;
+		while (true) {
+			int leftSize = sizeOf(block.left);
+			if (i <= leftSize) {
+				block = block.left;
+			} else if (i <= leftSize + block.count) {
+				return block.values[i - leftSize - 1];
+			} else {
+				i -= leftSize + block.count;
+				block = block.right;
+			}
+		}
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 *
+	 * Returns a sorted array which contains all keys in the tree, or an empty
+	 * array if the tree is empty.
+	 */
+	public int[] keysToArray() {
+		int[] keyArray = new int[size()];
+		int writeIndex = 0;
+		for (Block block = first(); block != null; block = successor(block)) {
+			System.arraycopy(block.keys, 0, keyArray, writeIndex, block.count);
+			writeIndex += block.count;
+		}
+		return keyArray;
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 *
+	 * Returns an array which contains all info in the tree, sorted by their
+	 * respective keys, or an empty array if the tree is empty.
+	 */
+	public String[] infoToArray() {
+		String[] infoArray = new String[size()];
+		int writeIndex = 0;
+		for (Block block = first(); block != null; block = successor(block)) {
+			System.arraycopy(block.values, 0, infoArray, writeIndex, block.count);
+			writeIndex += block.count;
+		}
+		return infoArray;
+	}
+
+	/**
+	 * static final class Block
+	 *
+	 * a tree node: keys[0..count) ascending with their values. its weight is
+	 * count, so size is the number of keys in its subtree.
+	 */
+	static final class Block extends WAVLCore.Node<Block> {
+		private int[] keys;
+		private String[] values;
+		private int count;
+
+		private Block(int capacity) {
+			this.keys = new int[capacity];
+			this.values = new String[capacity];
+		}
+
+		/**
+		 * @return the number of keys below k, which is the position of k if it
+		 *         is in the block. no early exit, so no branch depends on the
+		 *         keys.
+		 */
+		private int countBelow(int k) {
+			int[] keys = this.keys;
+			int below = 0;
+			for (int j = 0; j < count; j++) {
+				below += (keys[j] < k) ? 1 : 0;
+			}
+			return below;
+		}
+
+		/**
+		 * @pre count < keys.length
+		 */
+		private void insertAt(int pos, int k, String i) {
+			System.arraycopy(keys, pos, keys, pos + 1, count - pos);
+			System.arraycopy(values, pos, values, pos + 1, count - pos);
+			keys[pos] = k;
+			values[pos] = i;
+			count++;
+		}
+
+		private void removeAt(int pos) {
+			count--;
+			System.arraycopy(keys, pos + 1, keys, pos, count - pos);
+			System.arraycopy(values, pos + 1, values, pos, count - pos);
+			values[count] = null;
+		}
+
+		/**
+		 * @pre every key of other is below keys[0], count + other.count fits
+		 */
+		private void prepend(Block other) {
+			System.arraycopy(keys, 0, keys, other.count, count);
+			System.arraycopy(values, 0, values, other.count, count);
+			System.arraycopy(other.keys, 0, keys, 0, other.count);
+			System.arraycopy(other.values, 0, values, 0, other.count);
+			count += other.count;
+		}
+
+		/**
+		 * @pre every key of other is above keys[count - 1], count +
+		 *      other.count fits
+		 */
+		private void append(Block other) {
+			System.arraycopy(other.keys, 0, keys, count, other.count);
+			System.arraycopy(other.values, 0, values, count, other.count);
+			count += other.count;
+		}
+
+		private void clear() {
+			Arrays.fill(values, 0, count, null);
+			count = 0;
+		}
+
+		/**
+		 * exchanges keys, values and count with other; tree links, ranks and
+		 * sizes stay
+		 */
+		private void swapContents(Block other) {
+			int[] otherKeys = other.keys;
+			String[] otherValues = other.values;
+			int otherCount = other.count;
+			other.keys = keys;
+			other.values = values;
+			other.count = count;
+			keys = otherKeys;
+			values = otherValues;
+			count = otherCount;
+		}
+	}
+}
@@ -0,0 +1,706 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *
+ * ConcurrentWAVLTree
+ *
+ * A concurrent WAVL Tree with optimistic, version validated reads, in the
+ * style of Bronson, Casper, Chafi & Olukotun's concurrent AVL tree ('10).
+ *
+ * readers take no locks. every node has a version number, which is marked
+ * as shrinking while a rotation moves keys out of the node's subtree, and
+ * as unlinked once the node leaves the tree. a search reads a child, then
+ * re-validates the parent's version (hand-over-hand), and retries from the
+ * parent if it changed, so it never misses a key that was moved by a
+ * concurrent rotation.
+ *
+ * writers lock only the nodes they change: the parent of a new leaf, the
+ * parent and the node being unlinked, and for rebalancing the parent,
+ * node, child (and grandchild) of a rotation, always top down. rebalancing
+ * is relaxed: the promotion, demotion and rotation cases of the sequential
+ * WAVLTree (insertUpdateCase1..3, deleteUpdate22Leaf, deleteUpdateCase1..4)
+ * are applied one node at a time, walking up from the changed node, each
+ * step re-checked under the locks of the nodes it touches. once all
+ * updates finish, every node satisfies the WAVL rank rules again.
+ *
+ * like the original, the tree is partially external: deleting a node with
+ * two children only clears its value, and the value-less routing node is
+ * unlinked later, once it has at most one child.
+ *
+ */
+
+public class ConcurrentWAVLTree {
+
+	// ================= versions
+
+	private static final long UNLINKED = 1L;
+	private static final long SHRINKING = 2L;
+	private static final long VERSION_UNIT = 4L;
+
+	private static boolean isShrinking(long version) {
+		return (version & SHRINKING) != 0;
+	}
+
+	private static boolean isUnlinked(long version) {
+		return (version & UNLINKED) != 0;
+	}
+
+	private static boolean isShrinkingOrUnlinked(long version) {
+		return (version & (SHRINKING | UNLINKED)) != 0;
+	}
+
+	private static long beginShrink(long version) {
+		return version | SHRINKING;
+	}
+
+	private static long endShrink(long version) {
+		return (version & ~(SHRINKING | UNLINKED)) + VERSION_UNIT;
+	}
+
+	// ================= results of attempts and conditions
+
+	private static final int RETRY = Integer.MIN_VALUE;
+	private static final String RETRY_VALUE = new String("RETRY");
+
+	private static final int UNLINK_REQUIRED = -1;
+	private static final int REBALANCE_REQUIRED = -2;
+	private static final int NOTHING_REQUIRED = -3;
+
+	private static final int SPIN_COUNT = 100;
+
+	/**
+	 * holder of the root: the root is its right child. its version is never
+	 * changed, and its key is never compared.
+	 */
+	private final Node rootHolder = new Node(Integer.MIN_VALUE, null, -1, null);
+	private final LongAdder size = new LongAdder();
+
+	/**
+	 * constructor of an empty tree
+	 */
+	public ConcurrentWAVLTree() {
+	}
+
+	/**
+	 * @return true iff the tree holds no items (at the moment of the call)
+	 */
+	public boolean empty() {
+		return size() == 0;
+	}
+
+	/**
+	 * @return the number of items. exact when no update is in progress.
+	 */
+	public int size() {
+		return size.intValue();
+	}
+
+	// ================= search
+
+	/**
+	 * public String search(int k)
+	 *
+	 * @return info of an item with key k ,if it exists in the tree
+	 * otherwise, returns null. takes no locks.
+	 */
+	public String search(int k) {
+		while (true) {
+			Node right = rootHolder.right;
+			if (right == null) {
+				return null;
+			}
+			if (k == right.key) {
+				return right.value;
+			}
+			long ovl = right.version;
+			if (isShrinkingOrUnlinked(ovl)) {
+				waitUntilNotShrinking(right);
+			} else if (right == rootHolder.right) {
+				String result = attemptSearch(k, right, dirOf(k, right), ovl);
+				if (result != RETRY_VALUE) {
+					return result;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @pre node.version was nodeVersion when node was reached, and k is in
+	 *      the dir subtree of node
+	 * @return the info of k, null if k is absent, or RETRY_VALUE if node
+	 *         changed and the caller has to retry from its own node
+	 */
+	private String attemptSearch(int k, Node node, int dir, long nodeVersion) {
+		while (true) {
+			Node child = node.child(dir);
+			if (child == null) {
+				if (node.version != nodeVersion) {
+					return RETRY_VALUE;
+				}
+				return null;
+			}
+			if (k == child.key) {
+				return child.value;
+			}
+
+			long childVersion = child.version;
+			if (isShrinkingOrUnlinked(childVersion)) {
+				waitUntilNotShrinking(child);
+				if (node.version != nodeVersion) {
+					return RETRY_VALUE;
+				}
+			} else if (child != node.child(dir)) {
+				if (node.version != nodeVersion) {
+					return RETRY_VALUE;
+				}
+			} else {
+				// hand over hand: child is only valid if node did not change
+				if (node.version != nodeVersion) {
+					return RETRY_VALUE;
+				}
+				String result = attemptSearch(k, child, dirOf(k, child), childVersion);
+				if (result != RETRY_VALUE) {
+					return result;
+				}
+			}
+		}
+	}
+
+	private static void waitUntilNotShrinking(Node node) {
+		for (int i = 0; i < SPIN_COUNT; i++) {
+			if (!isShrinking(node.version)) {
+				return;
+			}
+		}
+		// shrinking happens under the node's lock, wait for it
+		synchronized (node) {
+		}
+	}
+
+	// ================= insert
+
+	/**
+	 * public int insert(int k, String i)
+	 *
+	 * inserts an item with key k and info i. returns the number of
+	 * rebalancing operations done by this call, or 0 if none were necessary.
+	 * returns -1 if an item with key k already exists in the tree.
+	 *
+	 * @pre i != null
+	 */
+	public int insert(int k, String i) {
+		while (true) {
+			int result = attemptInsert(k, i, rootHolder, 1, 0L);
+			if (result != RETRY) {
+				return result;
+			}
+		}
+	}
+
+	private int attemptInsert(int k, String i, Node node, int dir, long nodeVersion) {
+		while (true) {
+			Node child = node.child(dir);
+			if (node.version != nodeVersion) {
+				return RETRY;
+			}
+
+			if (child == null) {
+				// link a new leaf under node
+				synchronized (node) {
+					if (node.version != nodeVersion) {
+						return RETRY;
+					}
+					if (node.child(dir) != null) {
+						continue; // lost the race for this spot, look again
+					}
+					node.setChild(dir, new Node(k, i, 0, node));
+				}
+				size.increment();
+				return fixAndRebalance(node);
+			}
+
+			if (k == child.key) {
+				return attemptRevive(child, i);
+			}
+
+			long childVersion = child.version;
+			if (isShrinkingOrUnlinked(childVersion)) {
+				waitUntilNotShrinking(child);
+			} else if (child == node.child(dir)) {
+				if (node.version != nodeVersion) {
+					return RETRY;
+				}
+				int result = attemptInsert(k, i, child, dirOf(k, child), childVersion);
+				if (result != RETRY) {
+					return result;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return -1 if node holds a value, 0 after giving a routing node the
+	 *         value i, or RETRY if node was unlinked
+	 */
+	private int attemptRevive(Node node, String i) {
+		synchronized (node) {
+			if (isUnlinked(node.version)) {
+				return RETRY;
+			}
+			if (node.value != null) {
+				return -1;
+			}
+			node.value = i;
+		}
+		size.increment();
+		return 0;
+	}
+
+	// ================= delete
+
+	/**
+	 * public int delete(int k)
+	 *
+	 * deletes the item with key k, if it is there. returns the number of
+	 * rebalancing operations done by this call, or 0 if none were needed.
+	 * returns -1 if an item with key k was not found in the tree.
+	 */
+	public int delete(int k) {
+		while (true) {
+			int result = attemptDelete(k, rootHolder, 1, 0L);
+			if (result != RETRY) {
+				return result;
+			}
+		}
+	}
+
+	private int attemptDelete(int k, Node node, int dir, long nodeVersion) {
+		while (true) {
+			Node child = node.child(dir);
+			if (node.version != nodeVersion) {
+				return RETRY;
+			}
+			if (child == null) {
+				return -1;
+			}
+
+			if (k == child.key) {
+				return attemptDeleteNode(node, child);
+			}
+
+			long childVersion = child.version;
+			if (isShrinkingOrUnlinked(childVersion)) {
+				waitUntilNotShrinking(child);
+			} else if (child == node.child(dir)) {
+				if (node.version != nodeVersion) {
+					return RETRY;
+				}
+				int result = attemptDelete(k, child, dirOf(k, child), childVersion);
+				if (result != RETRY) {
+					return result;
+				}
+			}
+		}
+	}
+
+	/**
+	 * deletes the value of node, and unlinks node if it has at most one child
+	 */
+	private int attemptDeleteNode(Node parent, Node node) {
+		if (node.value == null) {
+			return -1; // routing node, the key is not in the map
+		}
+
+		if (node.left != null && node.right != null) {
+			// binary node - only clear the value, node stays as a routing node
+			synchronized (node) {
+				if (isUnlinked(node.version)) {
+					return RETRY;
+				}
+				if (node.value == null) {
+					return -1;
+				}
+				if (node.left != null && node.right != null) {
+					node.value = null;
+					size.decrement();
+					return 0;
+				}
+			}
+			// lost a child meanwhile, unlink instead
+		}
+
+		synchronized (parent) {
+			if (isUnlinked(parent.version) || node.parent != parent) {
+				return RETRY;
+			}
+			synchronized (node) {
+				if (isUnlinked(node.version)) {
+					return RETRY;
+				}
+				if (node.value == null) {
+					return -1;
+				}
+				node.value = null;
+				size.decrement();
+				if (!unlink_nl(parent, node)) {
+					return 0; // gained a child meanwhile, stays as a routing node
+				}
+			}
+		}
+		return fixAndRebalance(parent);
+	}
+
+	/**
+	 * @pre parent and node are locked, node.parent == parent
+	 * @return true iff node had at most one child and was unlinked
+	 */
+	private boolean unlink_nl(Node parent, Node node) {
+		Node left = node.left;
+		Node right = node.right;
+		if (left != null && right != null) {
+			return false;
+		}
+		Node splice = (left != null) ? left : right;
+		parent.replaceChild(node, splice);
+		if (splice != null) {
+			splice.parent = parent;
+		}
+		node.version = UNLINKED;
+		node.value = null;
+		return true;
+	}
+
+	// ================= rebalancing
+
+	private static int rank(Node node) {
+		return (node == null) ? -1 : node.rank;
+	}
+
+	/**
+	 * reads the node without locks.
+	 *
+	 * @return UNLINK_REQUIRED for a routing node with at most one child,
+	 *         NOTHING_REQUIRED for a valid WAVL node, a new rank (>= 0) if a
+	 *         promotion or demotion of node alone makes it valid (insert case
+	 *         1, 2,2 leaf, delete case 1), else REBALANCE_REQUIRED.
+	 */
+	private static int nodeCondition(Node node) {
+		Node left = node.left;
+		Node right = node.right;
+		if ((left == null || right == null) && node.value == null) {
+			return UNLINK_REQUIRED;
+		}
+
+		int rank = node.rank;
+		if (left == null && right == null) {
+			return (rank == 0) ? NOTHING_REQUIRED : 0; // leaves have rank 0
+		}
+
+		int high = Math.max(rank(left), rank(right));
+		int low = Math.min(rank(left), rank(right));
+		if (rank - high >= 1 && rank - low <= 2) {
+			return NOTHING_REQUIRED;
+		}
+		if (high - low <= 1) {
+			// (0,1) -> promote, or (3,2) -> demote
+			return high + 1;
+		}
+		return REBALANCE_REQUIRED;
+	}
+
+	/**
+	 * walks up from node, fixing one node at a time until a node needs no
+	 * change. a node whose rank changed, or whose position was taken by a
+	 * rotation, makes its parent the next node to check.
+	 *
+	 * @return number of promotions, demotions and rotations done
+	 */
+	private int fixAndRebalance(Node node) {
+		int[] ops = new int[1];
+		Node[] lowered = new Node[2];
+		while (node != null && node != rootHolder) {
+			int condition = nodeCondition(node);
+			if (condition == NOTHING_REQUIRED || isUnlinked(node.version)) {
+				break;
+			}
+
+			Node next;
+			if (condition != UNLINK_REQUIRED && condition != REBALANCE_REQUIRED) {
+				synchronized (node) {
+					next = fixRank_nl(node, ops);
+				}
+			} else {
+				Node parent = node.parent;
+				next = node; // retry, unless the locks below succeed
+				synchronized (parent) {
+					if (!isUnlinked(parent.version) && node.parent == parent) {
+						synchronized (node) {
+							next = rebalance_nl(parent, node, ops, lowered);
+						}
+					}
+				}
+			}
+
+			// nodes moved down by a rotation may need fixing on their own
+			for (int j = 0; j < lowered.length; j++) {
+				if (lowered[j] != null) {
+					Node check = lowered[j];
+					lowered[j] = null;
+					ops[0] += fixAndRebalance(check);
+				}
+			}
+			node = next;
+		}
+		return ops[0];
+	}
+
+	/**
+	 * @pre node is locked
+	 * @return node's parent if node's rank changed, node if it has to be
+	 *         re-checked with more locks, or null if nothing was needed
+	 */
+	private Node fixRank_nl(Node node, int[] ops) {
+		if (isUnlinked(node.version)) {
+			return null;
+		}
+		int condition = nodeCondition(node);
+		if (condition == NOTHING_REQUIRED) {
+			return null;
+		}
+		if (condition == UNLINK_REQUIRED || condition == REBALANCE_REQUIRED) {
+			return node;
+		}
+		node.rank = condition;
+		ops[0]++;
+		return node.parent;
+	}
+
+	/**
+	 * @pre parent and node are locked, node.parent == parent
+	 * @return the next node to check, or null if nothing was needed
+	 */
+	private Node rebalance_nl(Node parent, Node node, int[] ops, Node[] lowered) {
+		if (isUnlinked(node.version)) {
+			return null;
+		}
+		int condition = nodeCondition(node);
+		if (condition == NOTHING_REQUIRED) {
+			return null;
+		}
+		if (condition == UNLINK_REQUIRED) {
+			return unlink_nl(parent, node) ? parent : node;
+		}
+		if (condition >= 0) {
+			node.rank = condition;
+			ops[0]++;
+			return parent;
+		}
+
+		Node left = node.left;
+		Node right = node.right;
+		boolean leftIsHigh = rank(left) > rank(right);
+		Node high = leftIsHigh ? left : right;
+		int rank = node.rank;
+
+		if (rank - high.rank <= 0) {
+			// insertion: (0,2) node -> insert case 2 or 3
+			synchronized (high) {
+				Node inner = leftIsHigh ? high.right : high.left;
+				Node outer = leftIsHigh ? high.left : high.right;
+				if (rank(outer) >= rank(inner)) {
+					rotate_nl(parent, node, high, leftIsHigh);
+					node.rank = rankFromChildren(node);
+					high.rank = rankFromChildren(high);
+					ops[0] += 2;
+					lowered[0] = node;
+				} else {
+					synchronized (inner) {
+						doubleRotate_nl(parent, node, high, inner, leftIsHigh);
+						node.rank = rankFromChildren(node);
+						high.rank = rankFromChildren(high);
+						inner.rank = rankFromChildren(inner);
+						ops[0] += 5;
+						lowered[0] = node;
+						lowered[1] = high;
+					}
+				}
+			}
+			return parent;
+		}
+
+		// deletion: (3,1) node, high is the 1-sibling
+		synchronized (high) {
+			Node inner = leftIsHigh ? high.right : high.left;
+			Node outer = leftIsHigh ? high.left : high.right;
+			if (high.rank - rank(inner) >= 2 && high.rank - rank(outer) >= 2) {
+				// delete case 2 - demote the (2,2) sibling, node is re-checked
+				high.rank = rankFromChildren(high);
+				ops[0]++;
+				return node;
+			}
+			if (rank(outer) >= rank(inner)) {
+				// delete case 3 - single rotation
+				rotate_nl(parent, node, high, leftIsHigh);
+				node.rank = demotedRank(node, rank);
+				high.rank = rankFromChildren(high);
+				ops[0] += 3;
+				lowered[0] = node;
+			} else {
+				// delete case 4 - double rotation
+				synchronized (inner) {
+					int highRank = high.rank;
+					doubleRotate_nl(parent, node, high, inner, leftIsHigh);
+					node.rank = demotedRank(node, rank);
+					high.rank = demotedRank(high, highRank);
+					inner.rank = rankFromChildren(inner);
+					ops[0] += 7;
+					lowered[0] = node;
+					lowered[1] = high;
+				}
+			}
+		}
+		return parent;
+	}
+
+	/**
+	 * @return the lowest valid rank for node: 0 for a leaf, else one more
+	 *         than its highest child
+	 */
+	private static int rankFromChildren(Node node) {
+		if (node.left == null && node.right == null) {
+			return 0;
+		}
+		return Math.max(rank(node.left), rank(node.right)) + 1;
+	}
+
+	/**
+	 * @return the highest valid rank for node that is at most oldRank. keeps
+	 *         demotions after a deletion rotation as small as possible, like
+	 *         the sequential delete cases 3 and 4.
+	 */
+	private static int demotedRank(Node node, int oldRank) {
+		if (node.left == null && node.right == null) {
+			return 0;
+		}
+		int low = Math.min(rank(node.left), rank(node.right));
+		return Math.max(rankFromChildren(node), Math.min(oldRank, low + 2));
+	}
+
+	/**
+	 * rotates child (a child of node, on the left iff childIsLeft) into
+	 * node's place.
+	 *
+	 * @pre parent, node and child are locked
+	 */
+	private void rotate_nl(Node parent, Node node, Node child, boolean childIsLeft) {
+		long nodeVersion = node.version;
+		node.version = beginShrink(nodeVersion);
+
+		Node moved = childIsLeft ? child.right : child.left;
+		if (childIsLeft) {
+			node.left = moved;
+			child.right = node;
+		} else {
+			node.right = moved;
+			child.left = node;
+		}
+		if (moved != null) {
+			moved.parent = node;
+		}
+		node.parent = child;
+		parent.replaceChild(node, child);
+		child.parent = parent;
+
+		node.version = endShrink(nodeVersion);
+	}
+
+	/**
+	 * rotates grandchild (the inner child of child) into node's place.
+	 *
+	 * @pre parent, node, child and grandchild are locked
+	 */
+	private void doubleRotate_nl(Node parent, Node node, Node child, Node grandchild,
+			boolean childIsLeft) {
+		long nodeVersion = node.version;
+		long childVersion = child.version;
+		node.version = beginShrink(nodeVersion);
+		child.version = beginShrink(childVersion);
+
+		Node toChild = childIsLeft ? grandchild.left : grandchild.right;
+		Node toNode = childIsLeft ? grandchild.right : grandchild.left;
+		if (childIsLeft) {
+			child.right = toChild;
+			node.left = toNode;
+			grandchild.left = child;
+			grandchild.right = node;
+		} else {
+			child.left = toChild;
+			node.right = toNode;
+			grandchild.right = child;
+			grandchild.left = node;
+		}
+		if (toChild != null) {
+			toChild.parent = child;
+		}
+		if (toNode != null) {
+			toNode.parent = node;
+		}
+		child.parent = grandchild;
+		node.parent = grandchild;
+		parent.replaceChild(node, grandchild);
+		grandchild.parent = parent;
+
+		child.version = endShrink(childVersion);
+		node.version = endShrink(nodeVersion);
+	}
+
+	/**
+	 * @return -1 if k belongs in the left subtree of node, 1 otherwise
+	 */
+	private static int dirOf(int k, Node node) {
+		return (k < node.key) ? -1 : 1;
+	}
+
+	/**
+	 * a node of the concurrent tree. links, rank, value and version are
+	 * volatile so optimistic readers see them without locks; they are only
+	 * written while holding the node's lock (links of a parent are written
+	 * under the parent's lock).
+	 */
+	private static final class Node {
+		final int key;
+		volatile String value; // null for a routing node
+		volatile int rank;
+		volatile long version;
+		volatile Node parent;
+		volatile Node left;
+		volatile Node right;
+
+		Node(int key, String value, int rank, Node parent) {
+			this.key = key;
+			this.value = value;
+			this.rank = rank;
+			this.parent = parent;
+		}
+
+		Node child(int dir) {
+			return (dir < 0) ? left : right;
+		}
+
+		void setChild(int dir, Node child) {
+			if (dir < 0) {
+				left = child;
+			} else {
+				right = child;
+			}
+		}
+
+		void replaceChild(Node oldChild, Node newChild) {
+			if (left == oldChild) {
+				left = newChild;
+			} else {
+				right = newChild;
+			}
+		}
+	}
+}
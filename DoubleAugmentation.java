@@ -0,0 +1,97 @@
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.ToDoubleFunction;
+
+/**
+ *
+ * DoubleAugmentation
+ *
+ * A WAVLAugmentation with a double aggregate, stored unboxed in the node
+ * (as its raw long bits). query with WAVLTree.aggregateDouble.
+ *
+ * a floating point sum is associative only up to rounding, so a range sum
+ * may differ in the last bits from a left to right scan, and between two
+ * tree shapes holding the same items.
+ *
+ */
+
+public abstract class DoubleAugmentation extends WAVLAugmentation {
+
+	/**
+	 * @return the aggregate of no items: combine(identity(), a) == a
+	 */
+	public abstract double identity();
+
+	/**
+	 * @return the aggregate of the single item (k, i)
+	 */
+	public abstract double lift(int k, String i);
+
+	/**
+	 * @pre associative
+	 * @return the aggregate of the items of a followed by those of b
+	 */
+	public abstract double combine(double a, double b);
+
+	@Override
+	final void update(WAVLTree.AugmentedNode node, WAVLTree.WAVLNode left, WAVLTree.WAVLNode right) {
+		double aggregate = lift(node.getKey(), node.getValue());
+		if (left != WAVLTree.EXT) {
+			aggregate = combine(Double.longBitsToDouble(((WAVLTree.AugmentedNode) left).aggregate), aggregate);
+		}
+		if (right != WAVLTree.EXT) {
+			aggregate = combine(aggregate, Double.longBitsToDouble(((WAVLTree.AugmentedNode) right).aggregate));
+		}
+		node.aggregate = Double.doubleToRawLongBits(aggregate);
+	}
+
+	/**
+	 * public static DoubleAugmentation of(double identity,
+	 * ToDoubleFunction<String> payload, DoubleBinaryOperator combine)
+	 *
+	 * @return an augmentation combining payload(info) of every item
+	 */
+	public static DoubleAugmentation of(final double identity, final ToDoubleFunction<String> payload,
+			final DoubleBinaryOperator combine) {
+		return new DoubleAugmentation() {
+			@Override
+			public double identity() {
+				return identity;
+			}
+
+			@Override
+			public double lift(int k, String i) {
+				return payload.applyAsDouble(i);
+			}
+
+			@Override
+			public double combine(double a, double b) {
+				return combine.applyAsDouble(a, b);
+			}
+		};
+	}
+
+	/**
+	 * public static DoubleAugmentation sum(ToDoubleFunction<String> payload)
+	 */
+	public static DoubleAugmentation sum(ToDoubleFunction<String> payload) {
+		return of(0.0, payload, Double::sum);
+	}
+
+	/**
+	 * public static DoubleAugmentation min(ToDoubleFunction<String> payload)
+	 *
+	 * positive infinity for an empty range
+	 */
+	public static DoubleAugmentation min(ToDoubleFunction<String> payload) {
+		return of(Double.POSITIVE_INFINITY, payload, Math::min);
+	}
+
+	/**
+	 * public static DoubleAugmentation max(ToDoubleFunction<String> payload)
+	 *
+	 * negative infinity for an empty range
+	 */
+	public static DoubleAugmentation max(ToDoubleFunction<String> payload) {
+		return of(Double.NEGATIVE_INFINITY, payload, Math::max);
+	}
+}
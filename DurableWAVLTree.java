@@ -0,0 +1,513 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ *
+ * DurableWAVLTree
+ *
+ * A WAVLTree whose inserts and deletes survive a crash. every mutation that
+ * changes the tree is appended to a write-ahead log in the tree's directory,
+ * and insert/delete return only after the log record is forced to disk.
+ *
+ * group commit: writers append their records to a shared buffer, and one of
+ * the waiting writers (the leader) writes the whole buffer and calls
+ * force() once for all of them. the leader waits up to groupCommitNanos for
+ * groupCommitSize records to gather, so that one force() covers many
+ * mutations even when writers are few.
+ *
+ * every checkpointInterval mutations, the tree is written to CHECKPOINT_FILE
+ * (in the MappedWAVLTree format) and the log is truncated. recovery maps the
+ * last checkpoint, converts it to a tree, and replays the log over it with
+ * WAVLTree.insertAll/deleteAll, one batch per run of inserts or deletes.
+ * replay is idempotent (inserts of present keys and deletes of absent keys
+ * are skipped), so a crash between writing a checkpoint and truncating the
+ * log is harmless. a torn record at the end of the log (bad length or CRC)
+ * is cut off.
+ *
+ * log record: byte op, int key, [int value length (-1 for null), value
+ * UTF-8 bytes, for inserts only], int CRC32 of the preceding bytes.
+ *
+ * thread safe: the tree is guarded by its own monitor, the log buffer by
+ * commitLock. checkpoints block all other operations while they run.
+ *
+ * reads are uncommitted: a mutation is applied to the tree before its
+ * record is forced, so readers may see it while its writer still waits,
+ * and a crash in that window loses it. if the log cannot be written, the
+ * tree enters a failed state in which every call, reads included, throws
+ * UncheckedIOException, so mutations that never became durable are not
+ * seen after the failure; reopen the directory to get the durable state.
+ *
+ */
+
+public class DurableWAVLTree implements AutoCloseable {
+
+	public static final String CHECKPOINT_FILE = "checkpoint.wavl";
+	public static final String LOG_FILE = "wal.log";
+	private static final String CHECKPOINT_TMP = "checkpoint.wavl.tmp";
+
+	private static final byte INSERT = 1;
+	private static final byte DELETE = 2;
+	private static final int NULL_LENGTH = -1;
+	private static final int BUFFER_BYTES = 1 << 16;
+
+	private final Path dir;
+	private final WAVLTree tree;
+	private final FileChannel log;
+	private final int groupCommitSize;
+	private final long groupCommitNanos;
+	private final int checkpointInterval;
+	private int sinceCheckpoint; // guarded by tree
+
+	private final ReentrantLock commitLock = new ReentrantLock();
+	private final Condition committed = commitLock.newCondition();
+	private final Condition batchFilled = commitLock.newCondition();
+	// guarded by commitLock
+	private ByteBuffer pending = ByteBuffer.allocate(BUFFER_BYTES);
+	private ByteBuffer spare = ByteBuffer.allocate(BUFFER_BYTES);
+	private int pendingCount;
+	private long oldestPendingNanos;
+	private long appendedSeq;
+	private long durableSeq;
+	private boolean flushing;
+	private volatile IOException failure;
+
+	private DurableWAVLTree(Path dir, WAVLTree tree, FileChannel log, int groupCommitSize,
+			long groupCommitNanos, int checkpointInterval) {
+		this.dir = dir;
+		this.tree = tree;
+		this.log = log;
+		this.groupCommitSize = groupCommitSize;
+		this.groupCommitNanos = groupCommitNanos;
+		this.checkpointInterval = checkpointInterval;
+	}
+
+	/**
+	 * public static DurableWAVLTree open(Path dir, int groupCommitSize, long
+	 * groupCommitNanos, int checkpointInterval)
+	 *
+	 * opens (or creates) the tree stored in dir, recovering it from the last
+	 * checkpoint and the log.
+	 *
+	 * @pre groupCommitSize >= 1, groupCommitNanos >= 0, checkpointInterval >= 1
+	 */
+	public static DurableWAVLTree open(Path dir, int groupCommitSize, long groupCommitNanos,
+			int checkpointInterval) throws IOException {
+		Files.createDirectories(dir);
+		Files.deleteIfExists(dir.resolve(CHECKPOINT_TMP));
+		WAVLTree tree;
+		Path checkpoint = dir.resolve(CHECKPOINT_FILE);
+		if (Files.exists(checkpoint)) {
+			try (MappedWAVLTree mapped = MappedWAVLTree.open(checkpoint)) {
+				tree = mapped.toWAVLTree();
+			}
+		} else {
+			tree = new WAVLTree();
+		}
+
+		FileChannel log = FileChannel.open(dir.resolve(LOG_FILE), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			long valid = replay(log, tree);
+			if (valid < log.size()) { // torn tail from a crash
+				log.truncate(valid);
+				log.force(false);
+			}
+			log.position(valid);
+		} catch (IOException | RuntimeException e) {
+			log.close();
+			throw e;
+		}
+		return new DurableWAVLTree(dir, tree, log, groupCommitSize, groupCommitNanos, checkpointInterval);
+	}
+
+	/**
+	 * @return the length of the valid prefix of the log, all of which was
+	 *         applied to tree
+	 */
+	private static long replay(FileChannel log, WAVLTree tree) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(log.size()));
+		while (buffer.hasRemaining()) {
+			if (log.read(buffer, buffer.position()) < 0) {
+				break;
+			}
+		}
+		buffer.flip();
+
+		ReplayBatch batch = new ReplayBatch(tree);
+		CRC32 crc = new CRC32();
+		long valid = 0;
+		while (true) {
+			int start = buffer.position();
+			if (buffer.remaining() < 1 + 4 + 4) {
+				break;
+			}
+			byte op = buffer.get();
+			int key = buffer.getInt();
+			String value = null;
+			if (op == INSERT) {
+				int length = buffer.getInt();
+				if (length < NULL_LENGTH || buffer.remaining() < Math.max(length, 0) + 4) {
+					break;
+				}
+				if (length != NULL_LENGTH) {
+					byte[] bytes = new byte[length];
+					buffer.get(bytes);
+					value = new String(bytes, StandardCharsets.UTF_8);
+				}
+			} else if (op != DELETE) {
+				break;
+			}
+			if (buffer.remaining() < 4) {
+				break;
+			}
+			crc.reset();
+			crc.update(buffer.array(), start, buffer.position() - start);
+			if (buffer.getInt() != (int) crc.getValue()) {
+				break;
+			}
+			batch.add(op, key, value);
+			valid = buffer.position();
+		}
+		batch.flush();
+		return valid;
+	}
+
+	/**
+	 * consecutive inserts (or deletes) of distinct keys, applied together
+	 * through WAVLTree.insertAll (or deleteAll). a change of op, or a key
+	 * seen twice, ends the batch, so the log order of operations on any one
+	 * key is kept.
+	 */
+	private static final class ReplayBatch {
+		private final WAVLTree tree;
+		private final HashSet<Integer> batchKeys = new HashSet<Integer>();
+		private byte op;
+		private int[] keys = new int[1024];
+		private String[] values = new String[1024];
+		private int count;
+
+		ReplayBatch(WAVLTree tree) {
+			this.tree = tree;
+		}
+
+		void add(byte recordOp, int key, String value) {
+			if (recordOp != op || batchKeys.contains(key)) {
+				flush();
+				op = recordOp;
+			}
+			if (count == keys.length) {
+				keys = Arrays.copyOf(keys, 2 * count);
+				values = Arrays.copyOf(values, 2 * count);
+			}
+			keys[count] = key;
+			values[count] = value;
+			count++;
+			batchKeys.add(key);
+		}
+
+		void flush() {
+			if (count == 0) {
+				return;
+			}
+			int[] batch = Arrays.copyOf(keys, count);
+			if (op == INSERT) {
+				tree.insertAll(batch, Arrays.copyOf(values, count));
+			} else {
+				tree.deleteAll(batch);
+			}
+			count = 0;
+			batchKeys.clear();
+		}
+	}
+
+	/**
+	 * public int insert(int k, String i)
+	 *
+	 * same contract as WAVLTree.insert. returns once the insert is durable.
+	 *
+	 * @throws UncheckedIOException if the log cannot be written; the tree
+	 *         then refuses all further calls (see the class doc)
+	 */
+	public int insert(int k, String i) {
+		long seq;
+		int ops;
+		synchronized (tree) {
+			checkFailure();
+			ops = tree.insert(k, i);
+			if (ops == -1) {
+				return -1;
+			}
+			seq = append(INSERT, k, i);
+		}
+		awaitDurable(seq);
+		maybeCheckpoint();
+		return ops;
+	}
+
+	/**
+	 * public int delete(int k)
+	 *
+	 * same contract as WAVLTree.delete. returns once the delete is durable.
+	 *
+	 * @throws UncheckedIOException if the log cannot be written; the tree
+	 *         then refuses all further calls (see the class doc)
+	 */
+	public int delete(int k) {
+		long seq;
+		int ops;
+		synchronized (tree) {
+			checkFailure();
+			ops = tree.delete(k);
+			if (ops == -1) {
+				return -1;
+			}
+			seq = append(DELETE, k, null);
+		}
+		awaitDurable(seq);
+		maybeCheckpoint();
+		return ops;
+	}
+
+	/**
+	 * the reads below see every applied mutation, durable or not, and throw
+	 * UncheckedIOException once the log has failed (see the class doc)
+	 */
+	public String search(int k) {
+		synchronized (tree) {
+			checkFailure();
+			return tree.search(k);
+		}
+	}
+
+	public String select(int i) {
+		synchronized (tree) {
+			checkFailure();
+			return tree.select(i);
+		}
+	}
+
+	public int size() {
+		synchronized (tree) {
+			checkFailure();
+			return tree.size();
+		}
+	}
+
+	public int[] keysToArray() {
+		synchronized (tree) {
+			checkFailure();
+			return tree.keysToArray();
+		}
+	}
+
+	public String[] infoToArray() {
+		synchronized (tree) {
+			checkFailure();
+			return tree.infoToArray();
+		}
+	}
+
+	/**
+	 * @pre the tree monitor is held, so records are appended in the order
+	 *      the mutations were applied
+	 * @return sequence number of the appended record
+	 */
+	private long append(byte op, int key, String value) {
+		byte[] bytes = (value == null) ? null : value.getBytes(StandardCharsets.UTF_8);
+		int recordBytes = 1 + 4 + ((op == INSERT) ? 4 + ((bytes == null) ? 0 : bytes.length) : 0) + 4;
+		commitLock.lock();
+		try {
+			checkFailure();
+			if (pending.remaining() < recordBytes) {
+				ByteBuffer grown = ByteBuffer.allocate(Math.max(2 * pending.capacity(),
+						pending.position() + recordBytes));
+				pending.flip();
+				grown.put(pending);
+				pending = grown;
+			}
+			int start = pending.position();
+			pending.put(op).putInt(key);
+			if (op == INSERT) {
+				pending.putInt((bytes == null) ? NULL_LENGTH : bytes.length);
+				if (bytes != null) {
+					pending.put(bytes);
+				}
+			}
+			CRC32 crc = new CRC32();
+			crc.update(pending.array(), start, pending.position() - start);
+			pending.putInt((int) crc.getValue());
+
+			if (pendingCount++ == 0) {
+				oldestPendingNanos = System.nanoTime();
+			}
+			if (pendingCount >= groupCommitSize) {
+				batchFilled.signal();
+			}
+			return ++appendedSeq;
+		} finally {
+			commitLock.unlock();
+		}
+	}
+
+	/**
+	 * blocks until record seq is forced to disk. the first waiter to find no
+	 * flush running becomes the leader: it waits for the batch to fill (or
+	 * groupCommitNanos to pass), then writes and forces everything pending,
+	 * for itself and all other waiters.
+	 */
+	private void awaitDurable(long seq) {
+		commitLock.lock();
+		try {
+			while (durableSeq < seq) {
+				checkFailure();
+				if (flushing) {
+					committed.awaitUninterruptibly();
+					continue;
+				}
+				flushing = true;
+				long deadline = oldestPendingNanos + groupCommitNanos;
+				long left;
+				while (pendingCount < groupCommitSize && (left = deadline - System.nanoTime()) > 0) {
+					try {
+						batchFilled.awaitNanos(left);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						break;
+					}
+				}
+
+				ByteBuffer batch = pending;
+				long batchSeq = appendedSeq;
+				pending = spare;
+				spare = null;
+				pendingCount = 0;
+				commitLock.unlock();
+				IOException error = null;
+				try {
+					batch.flip();
+					while (batch.hasRemaining()) {
+						log.write(batch);
+					}
+					log.force(false);
+				} catch (IOException e) {
+					error = e;
+				} finally {
+					commitLock.lock();
+				}
+				batch.clear();
+				spare = batch;
+				if (error != null) {
+					failure = error;
+				} else {
+					durableSeq = batchSeq;
+				}
+				flushing = false;
+				committed.signalAll();
+			}
+		} finally {
+			commitLock.unlock();
+		}
+	}
+
+	private void checkFailure() {
+		if (failure != null) {
+			throw new UncheckedIOException("write-ahead log failed", failure);
+		}
+	}
+
+	private void maybeCheckpoint() {
+		synchronized (tree) {
+			if (++sinceCheckpoint >= checkpointInterval) {
+				checkpointLocked();
+			}
+		}
+	}
+
+	/**
+	 * public void checkpoint()
+	 *
+	 * writes the tree to CHECKPOINT_FILE and empties the log now, instead of
+	 * waiting for checkpointInterval mutations.
+	 *
+	 * @throws UncheckedIOException if the checkpoint cannot be written
+	 */
+	public void checkpoint() {
+		synchronized (tree) {
+			checkpointLocked();
+		}
+	}
+
+	/**
+	 * @pre the tree monitor is held: no mutation runs, and none is appended
+	 *      until this returns
+	 */
+	private void checkpointLocked() {
+		checkFailure();
+		commitLock.lock();
+		long last = appendedSeq;
+		commitLock.unlock();
+		awaitDurable(last); // no flush runs once everything is durable
+		try {
+			Path tmp = dir.resolve(CHECKPOINT_TMP);
+			MappedWAVLTree.write(tree, tmp);
+			try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+				channel.force(true);
+			}
+			Files.move(tmp, dir.resolve(CHECKPOINT_FILE), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+			forceDirectory();
+			// a crash before this point replays the whole log over the new
+			// checkpoint, which is harmless
+			commitLock.lock();
+			try {
+				log.truncate(0);
+				log.position(0);
+				log.force(false);
+			} finally {
+				commitLock.unlock();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("checkpoint failed", e);
+		}
+		sinceCheckpoint = 0;
+	}
+
+	/**
+	 * makes the rename of the checkpoint durable, where the platform allows
+	 * forcing a directory
+	 */
+	private void forceDirectory() {
+		try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			// not supported on every platform; the rename is atomic either way
+		}
+	}
+
+	/**
+	 * forces anything still pending and closes the log
+	 */
+	public void close() throws IOException {
+		synchronized (tree) {
+			commitLock.lock();
+			long last = appendedSeq;
+			commitLock.unlock();
+			if (failure == null) {
+				awaitDurable(last);
+			}
+			log.close();
+		}
+	}
+}
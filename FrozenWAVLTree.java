@@ -0,0 +1,166 @@
+/**
+ *
+ * FrozenWAVLTree
+ *
+ * An immutable snapshot of a WAVLTree (see WAVLTree.freeze()) laid out for
+ * fast search: the keys are stored in Eytzinger (BFS) order, the implicit
+ * complete tree where the children of position p are 2p and 2p + 1, in
+ * one int array instead of WAVLNode objects. the top levels share a few
+ * cache lines that stay hot across searches.
+ *
+ * search is branch free: each level picks the child by adding the result
+ * of one comparison, which the JIT compiles to a conditional move, so
+ * there are no mispredicted branches. it does no read-ahead (java has no
+ * prefetch instruction).
+ *
+ * order[p] is the position in key order of the key at Eytzinger position
+ * p, so the lower bound search also answers rank; values are kept in key
+ * order, so select is a plain array read.
+ *
+ * 12 bytes per entry (key, order, value reference), besides the values.
+ *
+ */
+
+public class FrozenWAVLTree {
+
+	private final int n;
+	private final int[] eytzinger; // 1 based, eytzinger[0] unused
+	private final int[] order; // key order index of eytzinger[p]
+	private final String[] values; // in key order
+
+	/**
+	 * @pre keys are strictly ascending, values.length == keys.length
+	 */
+	FrozenWAVLTree(int[] keys, String[] values) {
+		this.n = keys.length;
+		this.eytzinger = new int[n + 1];
+		this.order = new int[n + 1];
+		this.values = values;
+		fill(keys, 1, 0);
+	}
+
+	/**
+	 * in-order walk of the implicit tree, assigning keys[next...] in order
+	 *
+	 * @return next key index after position p's subtree
+	 */
+	private int fill(int[] keys, int p, int next) {
+		if (p > n) {
+			return next;
+		}
+		next = fill(keys, 2 * p, next);
+		eytzinger[p] = keys[next];
+		order[p] = next;
+		return fill(keys, 2 * p + 1, next + 1);
+	}
+
+	/**
+	 * @return the Eytzinger position of the smallest key >= k, or 0 if every
+	 *         key is < k
+	 */
+	private int lowerBound(int k) {
+		int p = 1;
+		while (p <= n) {
+			p = 2 * p + ((eytzinger[p] < k) ? 1 : 0);
+		}
+		// the path went right after the answer until it fell off: drop the
+		// trailing right steps and the final left step
+		return p >>> (Integer.numberOfTrailingZeros(~p) + 1);
+	}
+
+	/**
+	 * @return the Eytzinger position of the smallest key > k, or 0 if every
+	 *         key is <= k
+	 */
+	private int upperBound(int k) {
+		int p = 1;
+		while (p <= n) {
+			p = 2 * p + ((eytzinger[p] <= k) ? 1 : 0);
+		}
+		return p >>> (Integer.numberOfTrailingZeros(~p) + 1);
+	}
+
+	/**
+	 * public boolean empty()
+	 */
+	public boolean empty() {
+		return n == 0;
+	}
+
+	/**
+	 * public int size()
+	 */
+	public int size() {
+		return n;
+	}
+
+	/**
+	 * public String search(int k)
+	 *
+	 * @return info of an item with key k, or null if there is none
+	 */
+	public String search(int k) {
+		int p = lowerBound(k);
+		return (p != 0 && eytzinger[p] == k) ? values[order[p]] : null;
+	}
+
+	/**
+	 * public boolean contains(int k)
+	 */
+	public boolean contains(int k) {
+		int p = lowerBound(k);
+		return p != 0 && eytzinger[p] == k;
+	}
+
+	/**
+	 * public int rank(int k)
+	 *
+	 * @return the number of keys <= k, as WAVLTree.rank
+	 */
+	public int rank(int k) {
+		int p = upperBound(k);
+		return (p == 0) ? n : order[p];
+	}
+
+	/**
+	 * public String select(int i)
+	 *
+	 * @return the info of the i'th smallest key, or null if i is out of
+	 *         range. O(1).
+	 */
+	public String select(int i) {
+		return (i < 1 || i > n) ? null : values[i - 1];
+	}
+
+	/**
+	 * public String min()
+	 */
+	public String min() {
+		return select(1);
+	}
+
+	/**
+	 * public String max()
+	 */
+	public String max() {
+		return select(n);
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 */
+	public int[] keysToArray() {
+		int[] keyArray = new int[n];
+		for (int p = 1; p <= n; p++) {
+			keyArray[order[p]] = eytzinger[p];
+		}
+		return keyArray;
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 */
+	public String[] infoToArray() {
+		return values.clone();
+	}
+}
@@ -0,0 +1,230 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ *
+ * GenericWAVLTree
+ *
+ * A WAVL Tree with keys of any type K, ordered by a Comparator or by their
+ * natural ordering, and values of any type V. rebalancing is WAVLCore's.
+ * (WAVLTree is the int key, String info tree, so the generic one has its
+ * own name.)
+ *
+ * with natural ordering, keys must be Comparable, and null keys are not
+ * allowed; with a comparator, whatever it accepts.
+ *
+ */
+
+public class GenericWAVLTree<K, V> extends WAVLCore<GenericWAVLTree.GenericNode<K, V>> {
+
+	private final Comparator<? super K> comparator; // null: natural ordering
+
+	/**
+	 * constructor of an empty tree, keys in their natural ordering
+	 */
+	public GenericWAVLTree() {
+		this(null);
+	}
+
+	/**
+	 * constructor of an empty tree, keys ordered by comparator (natural
+	 * ordering if it is null)
+	 */
+	public GenericWAVLTree(Comparator<? super K> comparator) {
+		this.comparator = comparator;
+	}
+
+	/**
+	 * public Comparator<? super K> comparator()
+	 *
+	 * @return the comparator, or null for natural ordering
+	 */
+	public Comparator<? super K> comparator() {
+		return comparator;
+	}
+
+	@SuppressWarnings("unchecked")
+	private int compare(K a, K b) {
+		return (comparator == null) ? ((Comparable<? super K>) a).compareTo(b) : comparator.compare(a, b);
+	}
+
+	/**
+	 * public V search(K k)
+	 *
+	 * @return info of an item with key k ,if it exists in the tree
+	 * otherwise, returns null
+	 */
+	public V search(K k) {
+		GenericNode<K, V> node = searchNode(k);
+		return (node != null && compare(k, node.key) == 0) ? node.value : null;
+	}
+
+	/**
+	 * public boolean contains(K k)
+	 */
+	public boolean contains(K k) {
+		GenericNode<K, V> node = searchNode(k);
+		return node != null && compare(k, node.key) == 0;
+	}
+
+	/**
+	 * @return: null if the tree is empty, otherwise the node with key k, if
+	 *        exists, or the node that will be parent of an inserted k
+	 */
+	private GenericNode<K, V> searchNode(K k) {
+		GenericNode<K, V> current = root;
+		if (current == null) {
+			if (comparator == null) {
+				compare(k, k); // type (and null) check, like TreeMap
+			}
+			return null;
+		}
+		while (true) {
+			int cmp = compare(k, current.key);
+			if (cmp == 0) {
+				return current;
+			}
+			GenericNode<K, V> next = (cmp > 0) ? current.right : current.left;
+			if (next == null) {
+				return current;
+			}
+			current = next;
+		}
+	}
+
+	/**
+	 * public int insert(K k, V i)
+	 *
+	 * inserts an item with key k and info i to the WAVL tree. the tree must
+	 * remain valid (keep its invariants). returns the number of rebalancing
+	 * operations, or 0 if no rebalancing operations were necessary. returns -1
+	 * if an item with key k already exists in the tree.
+	 */
+	public int insert(K k, V i) {
+		GenericNode<K, V> parent = searchNode(k);
+		if (parent == null) {
+			return insertLeaf(null, false, new GenericNode<K, V>(k, i));
+		}
+		int cmp = compare(k, parent.key);
+		if (cmp == 0) {
+			return -1;
+		}
+		return insertLeaf(parent, cmp < 0, new GenericNode<K, V>(k, i));
+	}
+
+	/**
+	 * public int delete(K k)
+	 *
+	 * deletes an item with key k from the binary tree, if it is there; the tree
+	 * must remain valid (keep its invariants). returns the number of
+	 * rebalancing operations, or 0 if no rebalancing operations were needed.
+	 * returns -1 if an item with key k was not found in the tree.
+	 */
+	public int delete(K k) {
+		GenericNode<K, V> node = searchNode(k);
+		if (node == null || compare(k, node.key) != 0) {
+			return -1;
+		}
+		return removeItem(node);
+	}
+
+	@Override
+	void moveItem(GenericNode<K, V> from, GenericNode<K, V> to) {
+		to.key = from.key;
+		to.value = from.value;
+	}
+
+	/**
+	 * public V min()
+	 *
+	 * Returns the info of the item with the smallest key in the tree, or null
+	 * if the tree is empty
+	 */
+	public V min() {
+		GenericNode<K, V> node = first();
+		return (node == null) ? null : node.value;
+	}
+
+	/**
+	 * public V max()
+	 *
+	 * Returns the info of the item with the largest key in the tree, or null if
+	 * the tree is empty
+	 */
+	public V max() {
+		GenericNode<K, V> node = last();
+		return (node == null) ? null : node.value;
+	}
+
+	/**
+	 * public V select(int i)
+	 *
+	 * Returns the value of the i'th smallest key (return null if tree is empty,
+	 * or if i is out of range). select(1) returns the value of the minimal key.
+	 */
+	public V select(int i) {
+		return (i < 1 || i > size()) ? null : nodeAt(i).value;
+	}
+
+	/**
+	 * public int rank(K k)
+	 *
+	 * Returns the number of keys in the tree that are <= k, in O(log n).
+	 */
+	public int rank(K k) {
+		int count = 0;
+		GenericNode<K, V> node = root;
+		while (node != null) {
+			int cmp = compare(k, node.key);
+			if (cmp < 0) {
+				node = node.left;
+			} else {
+				count += sizeOf(node.left) + 1;
+				if (cmp == 0) {
+					break;
+				}
+				node = node.right;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * public List<K> keysToList()
+	 *
+	 * Returns a sorted list of all keys in the tree.
+	 */
+	public List<K> keysToList() {
+		List<K> keyList = new ArrayList<K>(size());
+		for (GenericNode<K, V> node = first(); node != null; node = successor(node)) {
+			keyList.add(node.key);
+		}
+		return keyList;
+	}
+
+	/**
+	 * public List<V> infoToList()
+	 *
+	 * Returns a list of all info in the tree, sorted by their respective
+	 * keys.
+	 */
+	public List<V> infoToList() {
+		List<V> infoList = new ArrayList<V>(size());
+		for (GenericNode<K, V> node = first(); node != null; node = successor(node)) {
+			infoList.add(node.value);
+		}
+		return infoList;
+	}
+
+	static final class GenericNode<K, V> extends WAVLCore.Node<GenericNode<K, V>> {
+		private K key;
+		private V value;
+
+		private GenericNode(K key, V value) {
+			this.key = key;
+			this.value = value;
+			this.size = 1;
+		}
+	}
+}
@@ -0,0 +1,203 @@
+import java.util.NoSuchElementException;
+
+/**
+ *
+ * IntLongWAVLTree
+ *
+ * A WAVL Tree with int keys and primitive long values, for numeric
+ * payloads that WAVLTree would keep as strings: a lookup neither parses
+ * nor allocates. rebalancing is WAVLCore's.
+ *
+ * a long has no null, so search takes the value to return for a missing
+ * key, and select, min and max throw on an empty tree or an out of range
+ * index instead of returning null.
+ *
+ */
+
+public class IntLongWAVLTree extends WAVLCore<IntLongWAVLTree.IntLongNode> {
+
+	/**
+	 * public long search(int k, long missing)
+	 *
+	 * @return value of the item with key k, if it exists in the tree
+	 * otherwise, returns missing
+	 */
+	public long search(int k, long missing) {
+		IntLongNode node = searchNode(k);
+		return (node != null && node.key == k) ? node.value : missing;
+	}
+
+	/**
+	 * public boolean contains(int k)
+	 */
+	public boolean contains(int k) {
+		IntLongNode node = searchNode(k);
+		return node != null && node.key == k;
+	}
+
+	/**
+	 * @return: null if the tree is empty, otherwise the node with key k, if
+	 *        exists, or the node that will be parent of an inserted k
+	 */
+	private IntLongNode searchNode(int k) {
+		IntLongNode current = root;
+		if (current == null) {
+			return null;
+		}
+		while (true) {
+			int currentKey = current.key;
+			if (currentKey == k) {
+				return current;
+			}
+			IntLongNode next = (k > currentKey) ? current.right : current.left;
+			if (next == null) {
+				return current;
+			}
+			current = next;
+		}
+	}
+
+	/**
+	 * public int insert(int k, long v)
+	 *
+	 * inserts an item with key k and value v to the WAVL tree. the tree must
+	 * remain valid (keep its invariants). returns the number of rebalancing
+	 * operations, or 0 if no rebalancing operations were necessary. returns -1
+	 * if an item with key k already exists in the tree.
+	 */
+	public int insert(int k, long v) {
+		IntLongNode parent = searchNode(k);
+		if (parent != null && parent.key == k) {
+			return -1;
+		}
+		return insertLeaf(parent, parent != null && k < parent.key, new IntLongNode(k, v));
+	}
+
+	/**
+	 * public int delete(int k)
+	 *
+	 * deletes an item with key k from the binary tree, if it is there; the tree
+	 * must remain valid (keep its invariants). returns the number of
+	 * rebalancing operations, or 0 if no rebalancing operations were needed.
+	 * returns -1 if an item with key k was not found in the tree.
+	 */
+	public int delete(int k) {
+		IntLongNode node = searchNode(k);
+		if (node == null || node.key != k) {
+			return -1;
+		}
+		return removeItem(node);
+	}
+
+	@Override
+	void moveItem(IntLongNode from, IntLongNode to) {
+		to.key = from.key;
+		to.value = from.value;
+	}
+
+	/**
+	 * public long min()
+	 *
+	 * Returns the value of the item with the smallest key in the tree
+	 *
+	 * @throws NoSuchElementException if the tree is empty
+	 */
+	public long min() {
+		if (empty()) {
+			throw new NoSuchElementException("empty tree");
+		}
+		return first().value;
+	}
+
+	/**
+	 * public long max()
+	 *
+	 * Returns the value of the item with the largest key in the tree
+	 *
+	 * @throws NoSuchElementException if the tree is empty
+	 */
+	public long max() {
+		if (empty()) {
+			throw new NoSuchElementException("empty tree");
+		}
+		return last().value;
+	}
+
+	/**
+	 * public long select(int i)
+	 *
+	 * Returns the value of the i'th smallest key. select(1) returns the value
+	 * of the minimal key.
+	 *
+	 * @throws IndexOutOfBoundsException unless 1 <= i <= size()
+	 */
+	public long select(int i) {
+		if (i < 1 || i > size()) {
+			throw new IndexOutOfBoundsException("select(" + i + ") in a tree of size " + size());
+		}
+		return nodeAt(i).value;
+	}
+
+	/**
+	 * public int rank(int k)
+	 *
+	 * Returns the number of keys in the tree that are <= k, in O(log n).
+	 */
+	public int rank(int k) {
+		int count = 0;
+		IntLongNode node = root;
+		while (node != null) {
+			if (k < node.key) {
+				node = node.left;
+			} else {
+				count += sizeOf(node.left) + 1;
+				if (k == node.key) {
+					break;
+				}
+				node = node.right;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 *
+	 * Returns a sorted array which contains all keys in the tree, or an empty
+	 * array if the tree is empty.
+	 */
+	public int[] keysToArray() {
+		int[] keyArray = new int[size()];
+		int writeIndex = 0;
+		for (IntLongNode node = first(); node != null; node = successor(node)) {
+			keyArray[writeIndex++] = node.key;
+		}
+		return keyArray;
+	}
+
+	/**
+	 * public long[] valuesToArray()
+	 *
+	 * Returns an array which contains all values in the tree, sorted by their
+	 * respective keys, or an empty array if the tree is empty.
+	 */
+	public long[] valuesToArray() {
+		long[] valueArray = new long[size()];
+		int writeIndex = 0;
+		for (IntLongNode node = first(); node != null; node = successor(node)) {
+			valueArray[writeIndex++] = node.value;
+		}
+		return valueArray;
+	}
+
+	static final class IntLongNode extends WAVLCore.Node<IntLongNode> {
+		private int key;
+		private long value;
+
+		private IntLongNode(int key, long value) {
+			this.key = key;
+			this.value = value;
+			this.size = 1;
+		}
+	}
+}
@@ -0,0 +1,95 @@
+import java.util.function.LongBinaryOperator;
+import java.util.function.ToLongFunction;
+
+/**
+ *
+ * LongAugmentation
+ *
+ * A WAVLAugmentation with a long aggregate, stored unboxed in the node.
+ * subclass it for a reducer over keys and info, or use one of the
+ * factories over a numeric payload of the info. query with
+ * WAVLTree.aggregateLong.
+ *
+ */
+
+public abstract class LongAugmentation extends WAVLAugmentation {
+
+	/**
+	 * @return the aggregate of no items: combine(identity(), a) == a
+	 */
+	public abstract long identity();
+
+	/**
+	 * @return the aggregate of the single item (k, i)
+	 */
+	public abstract long lift(int k, String i);
+
+	/**
+	 * @pre associative
+	 * @return the aggregate of the items of a followed by those of b
+	 */
+	public abstract long combine(long a, long b);
+
+	@Override
+	final void update(WAVLTree.AugmentedNode node, WAVLTree.WAVLNode left, WAVLTree.WAVLNode right) {
+		long aggregate = lift(node.getKey(), node.getValue());
+		if (left != WAVLTree.EXT) {
+			aggregate = combine(((WAVLTree.AugmentedNode) left).aggregate, aggregate);
+		}
+		if (right != WAVLTree.EXT) {
+			aggregate = combine(aggregate, ((WAVLTree.AugmentedNode) right).aggregate);
+		}
+		node.aggregate = aggregate;
+	}
+
+	/**
+	 * public static LongAugmentation of(long identity, ToLongFunction<String>
+	 * payload, LongBinaryOperator combine)
+	 *
+	 * @return an augmentation combining payload(info) of every item
+	 */
+	public static LongAugmentation of(final long identity, final ToLongFunction<String> payload,
+			final LongBinaryOperator combine) {
+		return new LongAugmentation() {
+			@Override
+			public long identity() {
+				return identity;
+			}
+
+			@Override
+			public long lift(int k, String i) {
+				return payload.applyAsLong(i);
+			}
+
+			@Override
+			public long combine(long a, long b) {
+				return combine.applyAsLong(a, b);
+			}
+		};
+	}
+
+	/**
+	 * public static LongAugmentation sum(ToLongFunction<String> payload)
+	 */
+	public static LongAugmentation sum(ToLongFunction<String> payload) {
+		return of(0L, payload, Long::sum);
+	}
+
+	/**
+	 * public static LongAugmentation min(ToLongFunction<String> payload)
+	 *
+	 * Long.MAX_VALUE for an empty range
+	 */
+	public static LongAugmentation min(ToLongFunction<String> payload) {
+		return of(Long.MAX_VALUE, payload, Math::min);
+	}
+
+	/**
+	 * public static LongAugmentation max(ToLongFunction<String> payload)
+	 *
+	 * Long.MIN_VALUE for an empty range
+	 */
+	public static LongAugmentation max(ToLongFunction<String> payload) {
+		return of(Long.MIN_VALUE, payload, Math::max);
+	}
+}
@@ -0,0 +1,188 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *
+ * LongWAVLTree
+ *
+ * A WAVL Tree with primitive long keys (e.g. 64 bit ids) and values of any
+ * type V. the search loop compares longs directly, so no lookup boxes the
+ * key; rebalancing is WAVLCore's.
+ *
+ */
+
+public class LongWAVLTree<V> extends WAVLCore<LongWAVLTree.LongNode<V>> {
+
+	/**
+	 * public V search(long k)
+	 *
+	 * @return info of an item with key k ,if it exists in the tree
+	 * otherwise, returns null
+	 */
+	public V search(long k) {
+		LongNode<V> node = searchNode(k);
+		return (node != null && node.key == k) ? node.value : null;
+	}
+
+	/**
+	 * public boolean contains(long k)
+	 */
+	public boolean contains(long k) {
+		LongNode<V> node = searchNode(k);
+		return node != null && node.key == k;
+	}
+
+	/**
+	 * @return: null if the tree is empty, otherwise the node with key k, if
+	 *        exists, or the node that will be parent of an inserted k
+	 */
+	private LongNode<V> searchNode(long k) {
+		LongNode<V> current = root;
+		if (current == null) {
+			return null;
+		}
+		while (true) {
+			long currentKey = current.key;
+			if (currentKey == k) {
+				return current;
+			}
+			LongNode<V> next = (k > currentKey) ? current.right : current.left;
+			if (next == null) {
+				return current;
+			}
+			current = next;
+		}
+	}
+
+	/**
+	 * public int insert(long k, V i)
+	 *
+	 * inserts an item with key k and info i to the WAVL tree. the tree must
+	 * remain valid (keep its invariants). returns the number of rebalancing
+	 * operations, or 0 if no rebalancing operations were necessary. returns -1
+	 * if an item with key k already exists in the tree.
+	 */
+	public int insert(long k, V i) {
+		LongNode<V> parent = searchNode(k);
+		if (parent != null && parent.key == k) {
+			return -1;
+		}
+		return insertLeaf(parent, parent != null && k < parent.key, new LongNode<V>(k, i));
+	}
+
+	/**
+	 * public int delete(long k)
+	 *
+	 * deletes an item with key k from the binary tree, if it is there; the tree
+	 * must remain valid (keep its invariants). returns the number of
+	 * rebalancing operations, or 0 if no rebalancing operations were needed.
+	 * returns -1 if an item with key k was not found in the tree.
+	 */
+	public int delete(long k) {
+		LongNode<V> node = searchNode(k);
+		if (node == null || node.key != k) {
+			return -1;
+		}
+		return removeItem(node);
+	}
+
+	@Override
+	void moveItem(LongNode<V> from, LongNode<V> to) {
+		to.key = from.key;
+		to.value = from.value;
+	}
+
+	/**
+	 * public V min()
+	 *
+	 * Returns the info of the item with the smallest key in the tree, or null
+	 * if the tree is empty
+	 */
+	public V min() {
+		LongNode<V> node = first();
+		return (node == null) ? null : node.value;
+	}
+
+	/**
+	 * public V max()
+	 *
+	 * Returns the info of the item with the largest key in the tree, or null if
+	 * the tree is empty
+	 */
+	public V max() {
+		LongNode<V> node = last();
+		return (node == null) ? null : node.value;
+	}
+
+	/**
+	 * public V select(int i)
+	 *
+	 * Returns the value of the i'th smallest key (return null if tree is empty,
+	 * or if i is out of range). select(1) returns the value of the minimal key.
+	 */
+	public V select(int i) {
+		return (i < 1 || i > size()) ? null : nodeAt(i).value;
+	}
+
+	/**
+	 * public int rank(long k)
+	 *
+	 * Returns the number of keys in the tree that are <= k, in O(log n).
+	 */
+	public int rank(long k) {
+		int count = 0;
+		LongNode<V> node = root;
+		while (node != null) {
+			if (k < node.key) {
+				node = node.left;
+			} else {
+				count += sizeOf(node.left) + 1;
+				if (k == node.key) {
+					break;
+				}
+				node = node.right;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * public long[] keysToArray()
+	 *
+	 * Returns a sorted array which contains all keys in the tree, or an empty
+	 * array if the tree is empty.
+	 */
+	public long[] keysToArray() {
+		long[] keyArray = new long[size()];
+		int writeIndex = 0;
+		for (LongNode<V> node = first(); node != null; node = successor(node)) {
+			keyArray[writeIndex++] = node.key;
+		}
+		return keyArray;
+	}
+
+	/**
+	 * public List<V> infoToList()
+	 *
+	 * Returns a list of all info in the tree, sorted by their respective
+	 * keys.
+	 */
+	public List<V> infoToList() {
+		List<V> infoList = new ArrayList<V>(size());
+		for (LongNode<V> node = first(); node != null; node = successor(node)) {
+			infoList.add(node.value);
+		}
+		return infoList;
+	}
+
+	static final class LongNode<V> extends WAVLCore.Node<LongNode<V>> {
+		private long key;
+		private V value;
+
+		private LongNode(long key, V value) {
+			this.key = key;
+			this.value = value;
+			this.size = 1;
+		}
+	}
+}
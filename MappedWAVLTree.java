@@ -0,0 +1,454 @@
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.NoSuchElementException;
+
+/**
+ *
+ * MappedWAVLTree
+ *
+ * A read only WAVL Tree in a file, opened by mapping the file into memory
+ * with FileChannel.map. queries read the node records in place, so opening
+ * a tree costs no deserialization, whatever its size.
+ *
+ * file layout (all little endian):
+ *   header (HEADER_BYTES bytes)
+ *     0  int  MAGIC
+ *     4  int  VERSION
+ *     8  int  node count n
+ *     12 int  index of the root record (NONE if n == 0)
+ *     16 long byte offset of the value heap
+ *     24 long byte length of the value heap
+ *   n node records (RECORD_BYTES bytes each), in key order
+ *     0  int  key
+ *     4  int  rank
+ *     8  int  size
+ *     12 int  index of the left child record (NONE for EXT)
+ *     16 int  index of the right child record (NONE for EXT)
+ *     20 int  unused
+ *     24 long offset of the value in the value heap
+ *   value heap: for every node in key order, the int length of its value in
+ *   UTF-8 bytes (NULL_LENGTH for null), followed by the bytes.
+ *
+ * child links are record indexes, and the records keep the shape and ranks
+ * of the written tree, so search descends the tree as usual. since records
+ * are stored in key order, the record of the i'th smallest key is simply
+ * record i - 1; select and range iteration use that directly.
+ *
+ * write() produces the file in one streaming pass over the tree. the tree
+ * owns its mapping: close() releases it, and it must not be used afterwards.
+ *
+ */
+
+public class MappedWAVLTree implements AutoCloseable {
+
+	public static final int MAGIC = 0x5741564C; // "WAVL"
+	public static final int VERSION = 1;
+	public static final int NONE = -1;
+
+	public static final long HEADER_BYTES = 32;
+	public static final long RECORD_BYTES = 32;
+
+	private static final long KEY = 0;
+	private static final long RANK = 4;
+	private static final long SIZE = 8;
+	private static final long LEFT = 12;
+	private static final long RIGHT = 16;
+	private static final long VALUE = 24;
+
+	private static final int NULL_LENGTH = -1;
+	private static final int BUFFER_BYTES = 1 << 16;
+
+	private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT.withOrder(ByteOrder.LITTLE_ENDIAN);
+	private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG.withOrder(ByteOrder.LITTLE_ENDIAN);
+	private static final ValueLayout.OfInt LENGTH = ValueLayout.JAVA_INT_UNALIGNED
+			.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+	private final Arena arena;
+	private final MemorySegment file;
+	private final int size;
+	private final int root;
+	private final long heapStart;
+
+	private MappedWAVLTree(Arena arena, MemorySegment file) {
+		this.arena = arena;
+		this.file = file;
+		if (file.byteSize() < HEADER_BYTES || file.get(INT, 0) != MAGIC) {
+			throw new IllegalArgumentException("not a WAVL tree file");
+		}
+		if (file.get(INT, 4) != VERSION) {
+			throw new IllegalArgumentException("unsupported WAVL tree file version " + file.get(INT, 4));
+		}
+		this.size = file.get(INT, 8);
+		this.root = file.get(INT, 12);
+		this.heapStart = file.get(LONG, 16);
+		if (heapStart + file.get(LONG, 24) != file.byteSize()) {
+			throw new IllegalArgumentException("truncated WAVL tree file");
+		}
+	}
+
+	/**
+	 * public static MappedWAVLTree open(Path path)
+	 *
+	 * maps a file written by write() read only.
+	 *
+	 * @throws IllegalArgumentException if path is not a WAVL tree file
+	 */
+	public static MappedWAVLTree open(Path path) throws IOException {
+		Arena arena = Arena.ofShared();
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			MemorySegment file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+			return new MappedWAVLTree(arena, file);
+		} catch (IOException | RuntimeException e) {
+			arena.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * releases the mapping
+	 */
+	public void close() {
+		arena.close();
+	}
+
+	/**
+	 * public static void write(WAVLTree tree, Path path)
+	 *
+	 * writes tree to path in the format above, replacing the file if it
+	 * exists. one in-order pass: node records and values go to their two
+	 * regions of the file through separate buffers, since the record region
+	 * size is known from tree.size() up front.
+	 */
+	public static void write(WAVLTree tree, Path path) throws IOException {
+		int n = tree.size();
+		long heapStart = HEADER_BYTES + n * RECORD_BYTES;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			Writer writer = new Writer(channel, heapStart);
+			WAVLTree.WAVLNode rootNode = tree.getRoot();
+			int rootIndex = NONE;
+			if (rootNode != null && rootNode != WAVLTree.EXT) {
+				rootIndex = sizeOf(rootNode.getLeft());
+				writer.writeRec(rootNode, 0);
+			}
+			writer.flush();
+
+			ByteBuffer header = ByteBuffer.allocate((int) HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(rootIndex);
+			header.putLong(heapStart).putLong(writer.valuePosition - heapStart);
+			header.flip();
+			writeFully(channel, header, 0);
+		}
+	}
+
+	/**
+	 * @return number of nodes under node, 0 for EXT (or null, which
+	 *         WAVLNode.getLeft()/getRight() return for EXT)
+	 */
+	private static int sizeOf(WAVLTree.WAVLNode node) {
+		return (node == null || node == WAVLTree.EXT) ? 0 : node.getSubtreeSize();
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+	}
+
+	private static final class Writer {
+		private final FileChannel channel;
+		private final ByteBuffer records = ByteBuffer.allocate(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		private final ByteBuffer values = ByteBuffer.allocate(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		private final long heapStart;
+		private long recordPosition = HEADER_BYTES;
+		private long valuePosition; // file position after the last buffered value
+
+		Writer(FileChannel channel, long heapStart) {
+			this.channel = channel;
+			this.heapStart = heapStart;
+			this.valuePosition = heapStart;
+		}
+
+		/**
+		 * @pre node != EXT, base is the key order index of the smallest key
+		 *      under node
+		 * @post the records of node's subtree are written, in key order
+		 */
+		void writeRec(WAVLTree.WAVLNode node, int base) throws IOException {
+			WAVLTree.WAVLNode left = node.getLeft();
+			WAVLTree.WAVLNode right = node.getRight();
+			int index = base + sizeOf(left);
+			if (left != null) {
+				writeRec(left, base);
+			}
+
+			if (records.remaining() < RECORD_BYTES) {
+				flushRecords();
+			}
+			records.putInt(node.getKey());
+			records.putInt(node.getRank());
+			records.putInt(node.getSubtreeSize());
+			records.putInt((left != null) ? base + sizeOf(left.getLeft()) : NONE);
+			records.putInt((right != null) ? index + 1 + sizeOf(right.getLeft()) : NONE);
+			records.putInt(0);
+			records.putLong(valuePosition - heapStart);
+			writeValue(node.getValue());
+
+			if (right != null) {
+				writeRec(right, index + 1);
+			}
+		}
+
+		private void writeValue(String value) throws IOException {
+			byte[] bytes = (value == null) ? null : value.getBytes(StandardCharsets.UTF_8);
+			int length = (bytes == null) ? 0 : bytes.length;
+			if (values.remaining() < 4 + length) {
+				flushValues();
+			}
+			values.putInt((bytes == null) ? NULL_LENGTH : length);
+			valuePosition += 4;
+			if (length > values.remaining()) { // larger than the buffer
+				flushValues();
+				writeFully(channel, ByteBuffer.wrap(bytes), valuePosition);
+			} else if (bytes != null) {
+				values.put(bytes);
+			}
+			valuePosition += length;
+		}
+
+		private void flushRecords() throws IOException {
+			records.flip();
+			long position = recordPosition;
+			recordPosition += records.remaining();
+			writeFully(channel, records, position);
+			records.clear();
+		}
+
+		/**
+		 * @post values is empty and written just below valuePosition
+		 */
+		private void flushValues() throws IOException {
+			values.flip();
+			long position = valuePosition - values.remaining();
+			writeFully(channel, values, position);
+			values.clear();
+		}
+
+		void flush() throws IOException {
+			flushRecords();
+			flushValues();
+		}
+	}
+
+	private long record(int index) {
+		return HEADER_BYTES + index * RECORD_BYTES;
+	}
+
+	private int key(int index) {
+		return file.get(INT, record(index) + KEY);
+	}
+
+	private int left(int index) {
+		return file.get(INT, record(index) + LEFT);
+	}
+
+	private int right(int index) {
+		return file.get(INT, record(index) + RIGHT);
+	}
+
+	/**
+	 * @return the rank of the i'th record, as it was in the written tree
+	 */
+	public int rankOf(int index) {
+		return file.get(INT, record(index) + RANK);
+	}
+
+	/**
+	 * @return the subtree size of the i'th record, as it was in the written
+	 *         tree
+	 */
+	public int subtreeSizeOf(int index) {
+		return file.get(INT, record(index) + SIZE);
+	}
+
+	private String value(int index) {
+		long offset = heapStart + file.get(LONG, record(index) + VALUE);
+		int length = file.get(LENGTH, offset);
+		if (length == NULL_LENGTH) {
+			return null;
+		}
+		byte[] bytes = file.asSlice(offset + 4, length).toArray(ValueLayout.JAVA_BYTE);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * public boolean empty()
+	 */
+	public boolean empty() {
+		return size == 0;
+	}
+
+	/**
+	 * public int size()
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * public String search(int k)
+	 *
+	 * @return info of an item with key k, or null. walks the written tree
+	 *         from its root.
+	 */
+	public String search(int k) {
+		int index = root;
+		while (index != NONE) {
+			int key = key(index);
+			if (k == key) {
+				return value(index);
+			}
+			index = (k < key) ? left(index) : right(index);
+		}
+		return null;
+	}
+
+	/**
+	 * public String select(int i)
+	 *
+	 * @return the info of the i'th smallest key, or null if i is out of
+	 *         range. O(1): records are in key order.
+	 */
+	public String select(int i) {
+		if (i < 1 || i > size) {
+			return null;
+		}
+		return value(i - 1);
+	}
+
+	/**
+	 * public String min()
+	 */
+	public String min() {
+		return select(1);
+	}
+
+	/**
+	 * public String max()
+	 */
+	public String max() {
+		return select(size);
+	}
+
+	/**
+	 * @return key order index of the first key >= k (size if none), by a
+	 *         descent of the written tree
+	 */
+	private int firstIndexAtLeast(int k) {
+		int index = root;
+		int result = size;
+		while (index != NONE) {
+			if (key(index) >= k) {
+				result = index;
+				index = left(index);
+			} else {
+				index = right(index);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * public Cursor range(int lo, int hi)
+	 *
+	 * @return a cursor over the keys in [lo, hi), in ascending order. O(log
+	 *         n) to start, then O(1) per key: records are read sequentially.
+	 */
+	public Cursor range(int lo, int hi) {
+		return new Cursor(firstIndexAtLeast(lo), hi);
+	}
+
+	/**
+	 * public class Cursor
+	 *
+	 * iterates the records from a start index up to (not including) the first
+	 * key >= hi. value() decodes only when asked.
+	 */
+	public class Cursor {
+		private final int hi;
+		private int next;
+		private int current = NONE;
+
+		private Cursor(int start, int hi) {
+			this.next = start;
+			this.hi = hi;
+		}
+
+		public boolean hasNext() {
+			return next < size && key(next) < hi;
+		}
+
+		/**
+		 * @return the next key
+		 * @throws NoSuchElementException if there is none
+		 */
+		public int nextKey() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			current = next++;
+			return key(current);
+		}
+
+		/**
+		 * @pre nextKey() was called
+		 * @return info of the key returned by the last nextKey()
+		 */
+		public String value() {
+			if (current == NONE) {
+				throw new IllegalStateException("nextKey() was not called");
+			}
+			return MappedWAVLTree.this.value(current);
+		}
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 */
+	public int[] keysToArray() {
+		int[] keyArray = new int[size];
+		for (int i = 0; i < size; i++) {
+			keyArray[i] = key(i);
+		}
+		return keyArray;
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 */
+	public String[] infoToArray() {
+		String[] infoArray = new String[size];
+		for (int i = 0; i < size; i++) {
+			infoArray[i] = value(i);
+		}
+		return infoArray;
+	}
+
+	/**
+	 * public WAVLTree toWAVLTree()
+	 *
+	 * @return a mutable in-memory tree with the same items, built in O(n) by
+	 *         WAVLTree.fromSortedArrays
+	 */
+	public WAVLTree toWAVLTree() {
+		return WAVLTree.fromSortedArrays(keysToArray(), infoToArray());
+	}
+}
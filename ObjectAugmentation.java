@@ -0,0 +1,74 @@
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+/**
+ *
+ * ObjectAugmentation
+ *
+ * A WAVLAugmentation with an aggregate of any type A, one object per node
+ * (e.g. a histogram, or several statistics at once). query with
+ * WAVLTree.aggregate. for a single long or double, LongAugmentation and
+ * DoubleAugmentation avoid the allocation and the boxing.
+ *
+ * combine may return one of its arguments, but must not modify them: they
+ * are the stored aggregates of subtrees.
+ *
+ */
+
+public abstract class ObjectAugmentation<A> extends WAVLAugmentation {
+
+	/**
+	 * @return the aggregate of no items: combine(identity(), a) equals a
+	 */
+	public abstract A identity();
+
+	/**
+	 * @return the aggregate of the single item (k, i)
+	 */
+	public abstract A lift(int k, String i);
+
+	/**
+	 * @pre associative
+	 * @return the aggregate of the items of a followed by those of b
+	 */
+	public abstract A combine(A a, A b);
+
+	@Override
+	@SuppressWarnings("unchecked")
+	final void update(WAVLTree.AugmentedNode node, WAVLTree.WAVLNode left, WAVLTree.WAVLNode right) {
+		A aggregate = lift(node.getKey(), node.getValue());
+		if (left != WAVLTree.EXT) {
+			aggregate = combine((A) ((WAVLTree.AugmentedNode) left).aggregateObject, aggregate);
+		}
+		if (right != WAVLTree.EXT) {
+			aggregate = combine(aggregate, (A) ((WAVLTree.AugmentedNode) right).aggregateObject);
+		}
+		node.aggregateObject = aggregate;
+	}
+
+	/**
+	 * public static <A> ObjectAugmentation<A> of(A identity, Function<String,
+	 * A> payload, BinaryOperator<A> combine)
+	 *
+	 * @return an augmentation combining payload(info) of every item
+	 */
+	public static <A> ObjectAugmentation<A> of(final A identity, final Function<String, A> payload,
+			final BinaryOperator<A> combine) {
+		return new ObjectAugmentation<A>() {
+			@Override
+			public A identity() {
+				return identity;
+			}
+
+			@Override
+			public A lift(int k, String i) {
+				return payload.apply(i);
+			}
+
+			@Override
+			public A combine(A a, A b) {
+				return combine.apply(a, b);
+			}
+		};
+	}
+}
@@ -0,0 +1,703 @@
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+
+/**
+ *
+ * OffHeapWAVLTree
+ *
+ * A WAVL Tree whose nodes live outside the java heap, in a MemorySegment.
+ * Every node is a fixed width record, and links between nodes are long
+ * byte offsets into the node segment, so the GC never scans the tree and
+ * the tree can hold more than 2^31 items (see sizeLong() and selectLong()).
+ *
+ * node record layout (NODE_BYTES bytes):
+ *   0  int  key
+ *   4  int  rank
+ *   8  long size
+ *   16 long left
+ *   24 long right
+ *   32 long parent
+ *   40 long value offset (NO_VALUE for null)
+ *
+ * values are UTF-8 bytes in a separate off-heap value heap, each prefixed by
+ * its int length. the value heap is append only; bytes of deleted or
+ * replaced values are reclaimed by compactValues(), which runs automatically
+ * once more than half the heap is garbage.
+ *
+ * the record at offset 0 is EXT (rank -1, size 0). the parent of the root is
+ * NIL. freed records are kept in a free list threaded through their left link.
+ *
+ * the tree owns its memory: close() releases it, and the tree must not be
+ * used afterwards. like WAVLTree, it is not thread safe.
+ *
+ */
+
+public class OffHeapWAVLTree implements AutoCloseable {
+
+	/**
+	 * offset of the static external leaf record. its fields are never written.
+	 */
+	public static final long EXT = 0;
+	/**
+	 * parent offset of the root
+	 */
+	public static final long NIL = -1;
+
+	public static final long NODE_BYTES = 48;
+
+	private static final long KEY = 0;
+	private static final long RANK = 4;
+	private static final long SIZE = 8;
+	private static final long LEFT = 16;
+	private static final long RIGHT = 24;
+	private static final long PARENT = 32;
+	private static final long VALUE = 40;
+
+	private static final long NO_VALUE = -1;
+	private static final long DEFAULT_CAPACITY = 1024;
+	private static final long DEFAULT_VALUE_BYTES = 16 * 1024;
+
+	private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT;
+	private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG;
+	private static final ValueLayout.OfInt LENGTH = ValueLayout.JAVA_INT_UNALIGNED;
+
+	private Arena nodeArena;
+	private MemorySegment nodes;
+	private long nodeTop = NODE_BYTES; // first record never used
+	private long freeList = NIL;
+
+	private Arena valueArena;
+	private MemorySegment values;
+	private long valueTop = 0;
+	private long valueGarbage = 0;
+
+	private long root = EXT;
+
+	/**
+	 * constructor of an empty tree with EXT as root
+	 */
+	public OffHeapWAVLTree() {
+		this(DEFAULT_CAPACITY, DEFAULT_VALUE_BYTES);
+	}
+
+	/**
+	 * @pre capacity >= 0, valueBytes >= 0
+	 * @post no node reallocation until more than capacity items are inserted
+	 */
+	public OffHeapWAVLTree(long capacity, long valueBytes) {
+		nodeArena = Arena.ofShared();
+		nodes = nodeArena.allocate((capacity + 1) * NODE_BYTES, Long.BYTES);
+		valueArena = Arena.ofShared();
+		values = valueArena.allocate(Math.max(Long.BYTES, valueBytes), Long.BYTES);
+
+		setRank(EXT, -1);
+		setSize(EXT, 0);
+		setLeft(EXT, EXT);
+		setRight(EXT, EXT);
+		setParent(EXT, NIL);
+		setValueOffset(EXT, NO_VALUE);
+	}
+
+	/**
+	 * @post all off-heap memory of the tree is released
+	 */
+	@Override
+	public void close() {
+		nodeArena.close();
+		valueArena.close();
+	}
+
+	// ================= record accessors
+
+	private int key(long n) {
+		return nodes.get(INT, n + KEY);
+	}
+
+	private void setKey(long n, int k) {
+		nodes.set(INT, n + KEY, k);
+	}
+
+	private int rank(long n) {
+		return nodes.get(INT, n + RANK);
+	}
+
+	private void setRank(long n, int r) {
+		nodes.set(INT, n + RANK, r);
+	}
+
+	private long size(long n) {
+		return nodes.get(LONG, n + SIZE);
+	}
+
+	private void setSize(long n, long s) {
+		nodes.set(LONG, n + SIZE, s);
+	}
+
+	private long left(long n) {
+		return nodes.get(LONG, n + LEFT);
+	}
+
+	private void setLeft(long n, long child) {
+		nodes.set(LONG, n + LEFT, child);
+	}
+
+	private long right(long n) {
+		return nodes.get(LONG, n + RIGHT);
+	}
+
+	private void setRight(long n, long child) {
+		nodes.set(LONG, n + RIGHT, child);
+	}
+
+	private long parent(long n) {
+		return nodes.get(LONG, n + PARENT);
+	}
+
+	private void setParent(long n, long par) {
+		nodes.set(LONG, n + PARENT, par);
+	}
+
+	private long valueOffset(long n) {
+		return nodes.get(LONG, n + VALUE);
+	}
+
+	private void setValueOffset(long n, long offset) {
+		nodes.set(LONG, n + VALUE, offset);
+	}
+
+	// ================= queries
+
+	/**
+	 * public boolean empty()
+	 *
+	 * @return: true iff the tree is empty
+	 */
+	public boolean empty() {
+		return (root == EXT);
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of nodes in the tree.
+	 * @throws ArithmeticException if the tree holds more than
+	 *         Integer.MAX_VALUE items, use sizeLong() instead
+	 */
+	public int size() {
+		return Math.toIntExact(sizeLong());
+	}
+
+	/**
+	 * @return the number of nodes in the tree
+	 */
+	public long sizeLong() {
+		return size(root);
+	}
+
+	/**
+	 * public String search(int k)
+	 *
+	 * @return info of an item with key k ,if it exists in the tree
+	 * otherwise, returns null
+	 */
+	public String search(int k) {
+		long node = searchNode(k);
+		if (node == EXT || key(node) != k) {
+			return null;
+		}
+		return readValue(node);
+	}
+
+	/**
+	 * @return: EXT if the tree is empty, otherwise the record with key k, if
+	 *        exists, or the record that will be parent of an inserted k
+	 */
+	private long searchNode(int k) {
+		long current = root;
+		if (current == EXT) {
+			return EXT;
+		}
+		while (true) {
+			int currentKey = key(current);
+			if (currentKey == k) {
+				return current;
+			}
+			long next = (k > currentKey) ? right(current) : left(current);
+			if (next == EXT) {
+				return current;
+			}
+			current = next;
+		}
+	}
+
+	/**
+	 * public String min()
+	 *
+	 * Returns the info of the item with the smallest key in the tree, or null
+	 * if the tree is empty
+	 */
+	public String min() {
+		if (empty()) {
+			return null;
+		}
+		return readValue(first());
+	}
+
+	/**
+	 * public String max()
+	 *
+	 * Returns the info of the item with the largest key in the tree, or null if
+	 * the tree is empty
+	 */
+	public String max() {
+		if (empty()) {
+			return null;
+		}
+		long node = root;
+		while (right(node) != EXT) {
+			node = right(node);
+		}
+		return readValue(node);
+	}
+
+	/**
+	 * public String select(int i)
+	 *
+	 * Returns the value of the i'th smallest key (return null if tree is empty,
+	 * or if i is out of range). select(1) returns the value of the minimal key.
+	 */
+	public String select(int i) {
+		return selectLong(i);
+	}
+
+	/**
+	 * long variant of select, for trees with more than 2^31 items
+	 */
+	public String selectLong(long i) {
+		if (i < 1 || i > sizeLong()) {
+			return null;
+		}
+		long node = root;
+		while (true) {
+			long nodeIndex = size(left(node)) + 1;
+			if (i == nodeIndex) {
+				return readValue(node);
+			} else if (i < nodeIndex) {
+				node = left(node);
+			} else {
+				i -= nodeIndex;
+				node = right(node);
+			}
+		}
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 *
+	 * Returns a sorted array which contains all keys in the tree, or an empty
+	 * array if the tree is empty.
+	 * @throws ArithmeticException if the keys do not fit in a java array
+	 */
+	public int[] keysToArray() {
+		int[] keyArray = new int[size()];
+		int writeIndex = 0;
+		for (long node = first(); node != NIL; node = successor(node)) {
+			keyArray[writeIndex++] = key(node);
+		}
+		return keyArray;
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 *
+	 * Returns an array which contains all info in the tree, sorted by their
+	 * respective keys, or an empty array if the tree is empty.
+	 * @throws ArithmeticException if the values do not fit in a java array
+	 */
+	public String[] infoToArray() {
+		String[] infoArray = new String[size()];
+		int writeIndex = 0;
+		for (long node = first(); node != NIL; node = successor(node)) {
+			infoArray[writeIndex++] = readValue(node);
+		}
+		return infoArray;
+	}
+
+	/**
+	 * @return record of the minimal key, or NIL if the tree is empty
+	 */
+	private long first() {
+		if (empty()) {
+			return NIL;
+		}
+		long node = root;
+		while (left(node) != EXT) {
+			node = left(node);
+		}
+		return node;
+	}
+
+	/**
+	 * @return record of the next key in order, or NIL if node is the maximum
+	 */
+	private long successor(long node) {
+		if (right(node) != EXT) {
+			node = right(node);
+			while (left(node) != EXT) {
+				node = left(node);
+			}
+			return node;
+		}
+		long par = parent(node);
+		while (par != NIL && right(par) == node) {
+			node = par;
+			par = parent(node);
+		}
+		return par;
+	}
+
+	// ================= updates
+
+	/**
+	 * public int insert(int k, String i)
+	 *
+	 * inserts an item with key k and info i to the WAVL tree. the tree must
+	 * remain valid (keep its invariants). returns the number of rebalancing
+	 * operations, or 0 if no rebalancing operations were necessary. returns -1
+	 * if an item with key k already exists in the tree.
+	 */
+	public int insert(int k, String i) {
+		if (empty()) {
+			root = allocate(k, i);
+			setParent(root, NIL);
+			return 0;
+		}
+
+		long insertTo = searchNode(k);
+		if (key(insertTo) == k) {
+			return -1;
+		}
+
+		long node = allocate(k, i);
+		setParent(node, insertTo);
+		if (k > key(insertTo)) {
+			setRight(insertTo, node);
+		} else {
+			setLeft(insertTo, node);
+		}
+		addSizeToRoot(insertTo, 1);
+
+		return insertRebalance(node);
+	}
+
+	/**
+	 * bottom up rebalancing after node was linked as a new leaf.
+	 * sizes on the path are already up to date, rotations keep them so.
+	 */
+	private int insertRebalance(long node) {
+		int ops = 0;
+		long par = parent(node);
+
+		// case 1 - (0,1) parent: promote and bubble up
+		while (par != NIL && rank(par) == rank(node)) {
+			long sibling = (left(par) == node) ? right(par) : left(par);
+			if (rank(par) - rank(sibling) != 1) {
+				break;
+			}
+			setRank(par, rank(par) + 1);
+			ops++;
+			node = par;
+			par = parent(node);
+		}
+
+		if (par == NIL || rank(par) != rank(node)) {
+			return ops;
+		}
+
+		long inner = (left(par) == node) ? right(node) : left(node);
+		if (rank(node) - rank(inner) == 2) {
+			// case 2 - single rotation
+			rotateUp(node);
+			setRank(par, rank(par) - 1);
+			ops += 2;
+		} else {
+			// case 3 - double rotation
+			rotateUp(inner);
+			rotateUp(inner);
+			setRank(inner, rank(inner) + 1);
+			setRank(node, rank(node) - 1);
+			setRank(par, rank(par) - 1);
+			ops += 5;
+		}
+		return ops;
+	}
+
+	/**
+	 * public int delete(int k)
+	 *
+	 * deletes an item with key k from the binary tree, if it is there; the tree
+	 * must remain valid (keep its invariants). returns the number of
+	 * rebalancing operations, or 0 if no rebalancing operations were needed.
+	 * returns -1 if an item with key k was not found in the tree.
+	 */
+	public int delete(int k) {
+		long node = searchNode(k);
+		if (node == EXT || key(node) != k) {
+			return -1;
+		}
+		discardValue(node);
+
+		// binary node - move successor's item here and delete successor instead
+		if (left(node) != EXT && right(node) != EXT) {
+			long successor = right(node);
+			while (left(successor) != EXT) {
+				successor = left(successor);
+			}
+			setKey(node, key(successor));
+			setValueOffset(node, valueOffset(successor));
+			node = successor;
+		}
+
+		long child = (left(node) != EXT) ? left(node) : right(node);
+		long par = parent(node);
+		boolean wasLeft = (par != NIL && left(par) == node);
+		replaceChild(par, node, child);
+		release(node);
+
+		if (par != NIL) {
+			addSizeToRoot(par, -1);
+		}
+		if (valueGarbage > valueTop / 2) {
+			compactValues();
+		}
+		if (par == NIL) {
+			return 0;
+		}
+		return deleteRebalance(child, par, wasLeft);
+	}
+
+	/**
+	 * bottom up rebalancing after a node was unlinked from par.
+	 * node may be EXT, so its side is passed explicitly.
+	 */
+	private int deleteRebalance(long node, long par, boolean nodeIsLeft) {
+		int ops = 0;
+
+		// 2,2 leaf - demote and roll the problem up
+		if (left(par) == EXT && right(par) == EXT && rank(par) == 1) {
+			setRank(par, 0);
+			ops++;
+			node = par;
+			par = parent(node);
+			if (par == NIL) {
+				return ops;
+			}
+			nodeIsLeft = (left(par) == node);
+		}
+
+		while (par != NIL && rank(par) - rank(node) == 3) {
+			long sibling = nodeIsLeft ? right(par) : left(par);
+
+			if (rank(par) - rank(sibling) == 2) {
+				// case 1 - (3,2): demote and bubble up
+				setRank(par, rank(par) - 1);
+				ops++;
+			} else {
+				long inner = nodeIsLeft ? left(sibling) : right(sibling);
+				long outer = nodeIsLeft ? right(sibling) : left(sibling);
+
+				if (rank(sibling) - rank(inner) == 2 && rank(sibling) - rank(outer) == 2) {
+					// case 2 - (3,1) with (2,2) sibling: double demote, bubble up
+					setRank(par, rank(par) - 1);
+					setRank(sibling, rank(sibling) - 1);
+					ops += 2;
+				} else if (rank(sibling) - rank(outer) == 1) {
+					// case 3 - single rotation, terminal
+					rotateUp(sibling);
+					setRank(sibling, rank(sibling) + 1);
+					setRank(par, rank(par) - 1);
+					ops += 3;
+					if (left(par) == EXT && right(par) == EXT && rank(par) == 1) {
+						setRank(par, 0);
+						ops++;
+					}
+					return ops;
+				} else {
+					// case 4 - double rotation, terminal
+					rotateUp(inner);
+					rotateUp(inner);
+					setRank(inner, rank(inner) + 2);
+					setRank(sibling, rank(sibling) - 1);
+					setRank(par, rank(par) - 2);
+					ops += 7;
+					return ops;
+				}
+			}
+			node = par;
+			par = parent(node);
+			if (par != NIL) {
+				nodeIsLeft = (left(par) == node);
+			}
+		}
+		return ops;
+	}
+
+	/**
+	 * @pre node != root
+	 * @post node takes its parent's place; sizes of both are recomputed
+	 */
+	private void rotateUp(long node) {
+		long par = parent(node);
+		long grand = parent(par);
+
+		if (left(par) == node) {
+			long moved = right(node);
+			setLeft(par, moved);
+			if (moved != EXT) {
+				setParent(moved, par);
+			}
+			setRight(node, par);
+		} else {
+			long moved = left(node);
+			setRight(par, moved);
+			if (moved != EXT) {
+				setParent(moved, par);
+			}
+			setLeft(node, par);
+		}
+		setParent(par, node);
+		replaceChild(grand, par, node);
+
+		setSize(node, size(par));
+		setSize(par, 1 + size(left(par)) + size(right(par)));
+	}
+
+	private void replaceChild(long par, long oldChild, long newChild) {
+		if (par == NIL) {
+			root = newChild;
+		} else if (left(par) == oldChild) {
+			setLeft(par, newChild);
+		} else {
+			setRight(par, newChild);
+		}
+		if (newChild != EXT) {
+			setParent(newChild, par);
+		}
+	}
+
+	private void addSizeToRoot(long node, long delta) {
+		while (node != NIL) {
+			setSize(node, size(node) + delta);
+			node = parent(node);
+		}
+	}
+
+	// ================= memory management
+
+	private long allocate(int k, String i) {
+		long node;
+		if (freeList != NIL) {
+			node = freeList;
+			freeList = left(node);
+		} else {
+			if (nodeTop + NODE_BYTES > nodes.byteSize()) {
+				nodes = grow(nodes, nodeTop + NODE_BYTES, true);
+			}
+			node = nodeTop;
+			nodeTop += NODE_BYTES;
+		}
+		setKey(node, k);
+		setRank(node, 0);
+		setSize(node, 1);
+		setLeft(node, EXT);
+		setRight(node, EXT);
+		setValueOffset(node, writeValue(i));
+		return node;
+	}
+
+	private void release(long node) {
+		setValueOffset(node, NO_VALUE);
+		setLeft(node, freeList);
+		freeList = node;
+	}
+
+	/**
+	 * @return a copy of old with at least required bytes, in a new arena.
+	 *         the arena of old is closed.
+	 */
+	private MemorySegment grow(MemorySegment old, long required, boolean isNodes) {
+		long capacity = Math.max(required, old.byteSize() * 2);
+		Arena arena = Arena.ofShared();
+		MemorySegment grown = arena.allocate(capacity, Long.BYTES);
+		MemorySegment.copy(old, 0, grown, 0, old.byteSize());
+		if (isNodes) {
+			nodeArena.close();
+			nodeArena = arena;
+		} else {
+			valueArena.close();
+			valueArena = arena;
+		}
+		return grown;
+	}
+
+	private long writeValue(String i) {
+		if (i == null) {
+			return NO_VALUE;
+		}
+		byte[] bytes = i.getBytes(StandardCharsets.UTF_8);
+		long required = valueTop + Integer.BYTES + bytes.length;
+		if (required > values.byteSize()) {
+			values = grow(values, required, false);
+		}
+		long offset = valueTop;
+		values.set(LENGTH, offset, bytes.length);
+		MemorySegment.copy(bytes, 0, values, ValueLayout.JAVA_BYTE, offset + Integer.BYTES, bytes.length);
+		valueTop = required;
+		return offset;
+	}
+
+	private String readValue(long node) {
+		long offset = valueOffset(node);
+		if (offset == NO_VALUE) {
+			return null;
+		}
+		int length = values.get(LENGTH, offset);
+		byte[] bytes = new byte[length];
+		MemorySegment.copy(values, ValueLayout.JAVA_BYTE, offset + Integer.BYTES, bytes, 0, length);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private void discardValue(long node) {
+		long offset = valueOffset(node);
+		if (offset != NO_VALUE) {
+			valueGarbage += Integer.BYTES + values.get(LENGTH, offset);
+		}
+	}
+
+	/**
+	 * @post the value heap holds only the values of nodes in the tree, in key
+	 *       order, and no garbage
+	 */
+	public void compactValues() {
+		Arena arena = Arena.ofShared();
+		MemorySegment compacted = arena.allocate(Math.max(Long.BYTES, valueTop - valueGarbage), Long.BYTES);
+		long top = 0;
+		for (long node = first(); node != NIL; node = successor(node)) {
+			long offset = valueOffset(node);
+			if (offset == NO_VALUE) {
+				continue;
+			}
+			long bytes = Integer.BYTES + values.get(LENGTH, offset);
+			MemorySegment.copy(values, offset, compacted, top, bytes);
+			setValueOffset(node, top);
+			top += bytes;
+		}
+		valueArena.close();
+		valueArena = arena;
+		values = compacted;
+		valueTop = top;
+		valueGarbage = 0;
+	}
+}
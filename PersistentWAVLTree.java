@@ -0,0 +1,468 @@
+/**
+ *
+ * PersistentWAVLTree
+ *
+ * A persistent (path copying) WAVL Tree. Nodes are immutable and have no
+ * parent pointer, so an update copies only the O(log n) nodes on the search
+ * path, rebalancing them on the way back up, and shares every other node
+ * with the previous version.
+ *
+ * every update publishes a new root through a volatile field. snapshot()
+ * captures the current root in O(1), and the returned Snapshot can be
+ * queried by any number of threads without locks, and without ever seeing
+ * a partial update. writers are serialized on the tree.
+ *
+ */
+
+public class PersistentWAVLTree {
+
+	/**
+	 * static external leaf (rank -1, size 0)
+	 */
+	private static final Node EXT = new Node(-1, null, -1, 0, null, null);
+
+	private volatile Node root = EXT;
+
+	// per update scratch state, only touched under the writer lock
+	private boolean changed;
+	private int ops;
+
+	/**
+	 * constructor of an empty tree
+	 */
+	public PersistentWAVLTree() {
+	}
+
+	/**
+	 * public Snapshot snapshot()
+	 *
+	 * @return an immutable view of the tree as of now, in O(1)
+	 */
+	public Snapshot snapshot() {
+		return new Snapshot(root);
+	}
+
+	public boolean empty() {
+		return (root == EXT);
+	}
+
+	public int size() {
+		return root.size;
+	}
+
+	/**
+	 * @return info of an item with key k in the latest version, or null
+	 */
+	public String search(int k) {
+		return snapshot().search(k);
+	}
+
+	/**
+	 * public int insert(int k, String i)
+	 *
+	 * inserts an item with key k and info i, and publishes the new version.
+	 * returns the number of rebalancing operations, or 0 if no rebalancing
+	 * operations were necessary. returns -1 if an item with key k already
+	 * exists in the tree (no new version is published).
+	 */
+	public synchronized int insert(int k, String i) {
+		changed = false;
+		ops = 0;
+		Node newRoot = insertRec(root, k, i);
+		if (!changed) {
+			return -1;
+		}
+		root = newRoot;
+		return ops;
+	}
+
+	/**
+	 * public int delete(int k)
+	 *
+	 * deletes the item with key k, if it is there, and publishes the new
+	 * version. returns the number of rebalancing operations, or 0 if no
+	 * rebalancing operations were needed. returns -1 if an item with key k
+	 * was not found in the tree (no new version is published).
+	 */
+	public synchronized int delete(int k) {
+		changed = false;
+		ops = 0;
+		Node newRoot = deleteRec(root, k);
+		if (!changed) {
+			return -1;
+		}
+		root = newRoot;
+		return ops;
+	}
+
+	// ================= insertion
+
+	/**
+	 * @return copy of node's subtree with (k, i) inserted, in which only node
+	 *         itself may be a 0-child of its (old) parent. returns node if k
+	 *         is already there.
+	 */
+	private Node insertRec(Node node, int k, String i) {
+		if (node == EXT) {
+			changed = true;
+			return new Node(k, i, 0, 1, EXT, EXT);
+		}
+		if (k == node.key) {
+			return node;
+		}
+		if (k < node.key) {
+			Node newLeft = insertRec(node.left, k, i);
+			return (newLeft == node.left) ? node : insertFixLeft(node, newLeft);
+		} else {
+			Node newRight = insertRec(node.right, k, i);
+			return (newRight == node.right) ? node : insertFixRight(node, newRight);
+		}
+	}
+
+	/**
+	 * @return node with its left child replaced by child, rebalanced
+	 */
+	private Node insertFixLeft(Node node, Node child) {
+		if (node.rank != child.rank) {
+			return node.withLeft(child); // valid
+		}
+		Node sibling = node.right;
+		if (node.rank - sibling.rank == 1) {
+			// case 1 - (0,1): promote
+			ops++;
+			return new Node(node.key, node.value, node.rank + 1, child, sibling);
+		}
+		// child is a 0-child and sibling a 2-child
+		Node inner = child.right;
+		if (child.rank - inner.rank == 2) {
+			// case 2 - single rotation
+			ops += 2;
+			Node demoted = new Node(node.key, node.value, node.rank - 1, inner, sibling);
+			return new Node(child.key, child.value, child.rank, child.left, demoted);
+		}
+		// case 3 - double rotation
+		ops += 5;
+		Node newLeft = new Node(child.key, child.value, child.rank - 1, child.left, inner.left);
+		Node newRight = new Node(node.key, node.value, node.rank - 1, inner.right, sibling);
+		return new Node(inner.key, inner.value, inner.rank + 1, newLeft, newRight);
+	}
+
+	/**
+	 * @return node with its right child replaced by child, rebalanced
+	 */
+	private Node insertFixRight(Node node, Node child) {
+		if (node.rank != child.rank) {
+			return node.withRight(child);
+		}
+		Node sibling = node.left;
+		if (node.rank - sibling.rank == 1) {
+			ops++;
+			return new Node(node.key, node.value, node.rank + 1, sibling, child);
+		}
+		Node inner = child.left;
+		if (child.rank - inner.rank == 2) {
+			ops += 2;
+			Node demoted = new Node(node.key, node.value, node.rank - 1, sibling, inner);
+			return new Node(child.key, child.value, child.rank, demoted, child.right);
+		}
+		ops += 5;
+		Node newLeft = new Node(node.key, node.value, node.rank - 1, sibling, inner.left);
+		Node newRight = new Node(child.key, child.value, child.rank - 1, inner.right, child.right);
+		return new Node(inner.key, inner.value, inner.rank + 1, newLeft, newRight);
+	}
+
+	// ================= deletion
+
+	/**
+	 * @return copy of node's subtree without k, in which only node itself
+	 *         may be a 3-child of its (old) parent. returns node if k is not
+	 *         there.
+	 */
+	private Node deleteRec(Node node, int k) {
+		if (node == EXT) {
+			return node;
+		}
+		if (k < node.key) {
+			Node newLeft = deleteRec(node.left, k);
+			return (newLeft == node.left) ? node : deleteFixLeft(node, newLeft);
+		}
+		if (k > node.key) {
+			Node newRight = deleteRec(node.right, k);
+			return (newRight == node.right) ? node : deleteFixRight(node, newRight);
+		}
+
+		changed = true;
+		if (node.left == EXT) {
+			return node.right;
+		}
+		if (node.right == EXT) {
+			return node.left;
+		}
+		// binary node - replace it by its successor
+		Node successor = node.right;
+		while (successor.left != EXT) {
+			successor = successor.left;
+		}
+		Node newRight = deleteMin(node.right);
+		Node replaced = new Node(successor.key, successor.value, node.rank, node.size, node.left, node.right);
+		return deleteFixRight(replaced, newRight);
+	}
+
+	/**
+	 * @pre node != EXT
+	 * @return copy of node's subtree without its minimum
+	 */
+	private Node deleteMin(Node node) {
+		if (node.left == EXT) {
+			return node.right;
+		}
+		return deleteFixLeft(node, deleteMin(node.left));
+	}
+
+	/**
+	 * @return node with its left child replaced by child, rebalanced
+	 */
+	private Node deleteFixLeft(Node node, Node child) {
+		Node sibling = node.right;
+		int rank = node.rank;
+
+		if (child == EXT && sibling == EXT && rank == 1) {
+			// 2,2 leaf - demote
+			ops++;
+			return new Node(node.key, node.value, 0, EXT, EXT);
+		}
+		if (rank - child.rank <= 2) {
+			return node.withLeft(child); // valid
+		}
+		if (rank - sibling.rank == 2) {
+			// case 1 - (3,2): demote
+			ops++;
+			return new Node(node.key, node.value, rank - 1, child, sibling);
+		}
+		Node inner = sibling.left;
+		Node outer = sibling.right;
+		if (sibling.rank - inner.rank == 2 && sibling.rank - outer.rank == 2) {
+			// case 2 - (3,1) with (2,2) sibling: double demote
+			ops += 2;
+			Node demoted = new Node(sibling.key, sibling.value, sibling.rank - 1, inner, outer);
+			return new Node(node.key, node.value, rank - 1, child, demoted);
+		}
+		if (sibling.rank - outer.rank == 1) {
+			// case 3 - single rotation
+			ops += 3;
+			int newRank = rank - 1;
+			if (child == EXT && inner == EXT) {
+				newRank = 0; // would be a 2,2 leaf
+				ops++;
+			}
+			Node demoted = new Node(node.key, node.value, newRank, child, inner);
+			return new Node(sibling.key, sibling.value, sibling.rank + 1, demoted, outer);
+		}
+		// case 4 - double rotation
+		ops += 7;
+		Node newLeft = new Node(node.key, node.value, rank - 2, child, inner.left);
+		Node newRight = new Node(sibling.key, sibling.value, sibling.rank - 1, inner.right, outer);
+		return new Node(inner.key, inner.value, inner.rank + 2, newLeft, newRight);
+	}
+
+	/**
+	 * @return node with its right child replaced by child, rebalanced
+	 */
+	private Node deleteFixRight(Node node, Node child) {
+		Node sibling = node.left;
+		int rank = node.rank;
+
+		if (child == EXT && sibling == EXT && rank == 1) {
+			ops++;
+			return new Node(node.key, node.value, 0, EXT, EXT);
+		}
+		if (rank - child.rank <= 2) {
+			return node.withRight(child);
+		}
+		if (rank - sibling.rank == 2) {
+			ops++;
+			return new Node(node.key, node.value, rank - 1, sibling, child);
+		}
+		Node inner = sibling.right;
+		Node outer = sibling.left;
+		if (sibling.rank - inner.rank == 2 && sibling.rank - outer.rank == 2) {
+			ops += 2;
+			Node demoted = new Node(sibling.key, sibling.value, sibling.rank - 1, outer, inner);
+			return new Node(node.key, node.value, rank - 1, demoted, child);
+		}
+		if (sibling.rank - outer.rank == 1) {
+			ops += 3;
+			int newRank = rank - 1;
+			if (child == EXT && inner == EXT) {
+				newRank = 0;
+				ops++;
+			}
+			Node demoted = new Node(node.key, node.value, newRank, inner, child);
+			return new Node(sibling.key, sibling.value, sibling.rank + 1, outer, demoted);
+		}
+		ops += 7;
+		Node newLeft = new Node(sibling.key, sibling.value, sibling.rank - 1, outer, inner.left);
+		Node newRight = new Node(node.key, node.value, rank - 2, inner.right, child);
+		return new Node(inner.key, inner.value, inner.rank + 2, newLeft, newRight);
+	}
+
+	/**
+	 * public static class Snapshot
+	 *
+	 * an immutable version of a PersistentWAVLTree. safe to share between
+	 * threads; later updates of the tree do not affect it.
+	 */
+	public static class Snapshot {
+		private final Node root;
+
+		private Snapshot(Node root) {
+			this.root = root;
+		}
+
+		public boolean empty() {
+			return (root == EXT);
+		}
+
+		public int size() {
+			return root.size;
+		}
+
+		/**
+		 * @return info of an item with key k, or null if it is not there
+		 */
+		public String search(int k) {
+			Node node = root;
+			while (node != EXT) {
+				if (k == node.key) {
+					return node.value;
+				}
+				node = (k < node.key) ? node.left : node.right;
+			}
+			return null;
+		}
+
+		/**
+		 * @return the value of the i'th smallest key, or null if i is out of
+		 *         range. select(1) returns the value of the minimal key.
+		 */
+		public String select(int i) {
+			if (i < 1 || i > size()) {
+				return null;
+			}
+			Node node = root;
+			while (true) {
+				int nodeIndex = node.left.size + 1;
+				if (i == nodeIndex) {
+					return node.value;
+				} else if (i < nodeIndex) {
+					node = node.left;
+				} else {
+					i -= nodeIndex;
+					node = node.right;
+				}
+			}
+		}
+
+		/**
+		 * @return info of the smallest key, or null if empty
+		 */
+		public String min() {
+			if (empty()) {
+				return null;
+			}
+			Node node = root;
+			while (node.left != EXT) {
+				node = node.left;
+			}
+			return node.value;
+		}
+
+		/**
+		 * @return info of the largest key, or null if empty
+		 */
+		public String max() {
+			if (empty()) {
+				return null;
+			}
+			Node node = root;
+			while (node.right != EXT) {
+				node = node.right;
+			}
+			return node.value;
+		}
+
+		/**
+		 * @return all keys, sorted, or an empty array if empty
+		 */
+		public int[] keysToArray() {
+			int[] keyArray = new int[size()];
+			keysToArrayRec(root, keyArray, 0);
+			return keyArray;
+		}
+
+		private static int keysToArrayRec(Node node, int[] resultArray, int writeIndex) {
+			if (node == EXT) {
+				return writeIndex;
+			}
+			writeIndex = keysToArrayRec(node.left, resultArray, writeIndex);
+			resultArray[writeIndex++] = node.key;
+			return keysToArrayRec(node.right, resultArray, writeIndex);
+		}
+
+		/**
+		 * @return all info, sorted by key, or an empty array if empty
+		 */
+		public String[] infoToArray() {
+			String[] infoArray = new String[size()];
+			infoToArrayRec(root, infoArray, 0);
+			return infoArray;
+		}
+
+		private static int infoToArrayRec(Node node, String[] resultArray, int writeIndex) {
+			if (node == EXT) {
+				return writeIndex;
+			}
+			writeIndex = infoToArrayRec(node.left, resultArray, writeIndex);
+			resultArray[writeIndex++] = node.value;
+			return infoToArrayRec(node.right, resultArray, writeIndex);
+		}
+	}
+
+	/**
+	 * immutable node. all fields are final, so nodes are safely published
+	 * with the volatile root.
+	 */
+	private static final class Node {
+		final int key;
+		final String value;
+		final int rank;
+		final int size;
+		final Node left;
+		final Node right;
+
+		Node(int key, String value, int rank, int size, Node left, Node right) {
+			this.key = key;
+			this.value = value;
+			this.rank = rank;
+			this.size = size;
+			this.left = left;
+			this.right = right;
+		}
+
+		/**
+		 * @pre left != null && right != null
+		 * @post size is computed from the children
+		 */
+		Node(int key, String value, int rank, Node left, Node right) {
+			this(key, value, rank, 1 + left.size + right.size, left, right);
+		}
+
+		Node withLeft(Node newLeft) {
+			return new Node(key, value, rank, newLeft, right);
+		}
+
+		Node withRight(Node newRight) {
+			return new Node(key, value, rank, left, newRight);
+		}
+	}
+}
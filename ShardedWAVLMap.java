@@ -0,0 +1,348 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ *
+ * ShardedWAVLMap
+ *
+ * A concurrent map that partitions the int key space into contiguous ranges,
+ * each held by an independent WAVLTree with its own read-write lock, so
+ * writes to different ranges run in parallel, and searches of the same
+ * range share it (WAVLTree searches are read only with finger search off).
+ *
+ * shard i holds the keys in [bounds[i], bounds[i + 1]) (the last shard runs
+ * to Integer.MAX_VALUE). operations route under the read side of a
+ * routing lock. every REBALANCE_INTERVAL updates, the write side is taken
+ * and boundaries between neighbouring shards of very different sizes are
+ * moved, using split and join on the trees, so a skewed workload does not
+ * pile onto one shard. moving a boundary costs O(log n), not O(moved keys).
+ *
+ * global select(i), keysToArray() and infoToArray() combine the per-shard
+ * subtree sizes, and see a consistent state of all shards.
+ *
+ */
+
+public class ShardedWAVLMap {
+
+	/**
+	 * number of updates between two automatic boundary rebalancing passes
+	 */
+	public static final int REBALANCE_INTERVAL = 1 << 16;
+	/**
+	 * a boundary is moved when one neighbour holds more than SKEW_FACTOR
+	 * times the keys of the other (and at least MIN_MOVE keys would move)
+	 */
+	public static final int SKEW_FACTOR = 2;
+	public static final int MIN_MOVE = 64;
+
+	private final Shard[] shards;
+	private final int[] bounds;
+	private final ReentrantReadWriteLock routing = new ReentrantReadWriteLock();
+	private final AtomicLong updates = new AtomicLong();
+
+	private static final class Shard {
+		final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+		WAVLTree tree = new WAVLTree();
+	}
+
+	/**
+	 * @pre shardCount >= 1
+	 * @post the int key space is split into shardCount ranges of equal width
+	 */
+	public ShardedWAVLMap(int shardCount) {
+		shards = new Shard[shardCount];
+		bounds = new int[shardCount];
+		long width = (1L << 32) / shardCount;
+		for (int i = 0; i < shardCount; i++) {
+			shards[i] = new Shard();
+			bounds[i] = (int) (Integer.MIN_VALUE + i * width);
+		}
+	}
+
+	/**
+	 * @pre the routing lock is held
+	 * @return index of the shard whose range holds k
+	 */
+	private int route(int k) {
+		int lo = 0;
+		int hi = bounds.length - 1;
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (bounds[mid] <= k) {
+				lo = mid;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * @return info of an item with key k, or null if it is not there
+	 */
+	public String search(int k) {
+		routing.readLock().lock();
+		try {
+			Shard shard = shards[route(k)];
+			shard.lock.readLock().lock();
+			try {
+				return shard.tree.search(k);
+			} finally {
+				shard.lock.readLock().unlock();
+			}
+		} finally {
+			routing.readLock().unlock();
+		}
+	}
+
+	/**
+	 * same contract as WAVLTree.insert: number of rebalancing operations in
+	 * the shard, or -1 if k is already there
+	 */
+	public int insert(int k, String i) {
+		int result;
+		routing.readLock().lock();
+		try {
+			Shard shard = shards[route(k)];
+			shard.lock.writeLock().lock();
+			try {
+				result = shard.tree.insert(k, i);
+			} finally {
+				shard.lock.writeLock().unlock();
+			}
+		} finally {
+			routing.readLock().unlock();
+		}
+		afterUpdate();
+		return result;
+	}
+
+	/**
+	 * same contract as WAVLTree.delete: number of rebalancing operations in
+	 * the shard, or -1 if k was not there
+	 */
+	public int delete(int k) {
+		int result;
+		routing.readLock().lock();
+		try {
+			Shard shard = shards[route(k)];
+			shard.lock.writeLock().lock();
+			try {
+				result = shard.tree.delete(k);
+			} finally {
+				shard.lock.writeLock().unlock();
+			}
+		} finally {
+			routing.readLock().unlock();
+		}
+		afterUpdate();
+		return result;
+	}
+
+	private void afterUpdate() {
+		if (updates.incrementAndGet() % REBALANCE_INTERVAL == 0) {
+			// skip if another thread is rebalancing, or waits to
+			if (routing.writeLock().tryLock()) {
+				try {
+					rebalanceBoundaries();
+				} finally {
+					routing.writeLock().unlock();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return number of items in all shards
+	 */
+	public int size() {
+		routing.readLock().lock();
+		lockAll();
+		try {
+			int size = 0;
+			for (Shard shard : shards) {
+				size += shard.tree.size();
+			}
+			return size;
+		} finally {
+			unlockAll();
+			routing.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the number of items in every shard, for monitoring
+	 */
+	public int[] shardSizes() {
+		routing.readLock().lock();
+		lockAll();
+		try {
+			int[] sizes = new int[shards.length];
+			for (int i = 0; i < shards.length; i++) {
+				sizes[i] = shards[i].tree.size();
+			}
+			return sizes;
+		} finally {
+			unlockAll();
+			routing.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the value of the i'th smallest key over all shards, or null if
+	 *         i is out of range. select(1) returns the value of the minimum.
+	 */
+	public String select(int i) {
+		routing.readLock().lock();
+		lockAll();
+		try {
+			for (Shard shard : shards) {
+				int shardSize = shard.tree.size();
+				if (i <= shardSize) {
+					return (i >= 1) ? shard.tree.select(i) : null;
+				}
+				i -= shardSize;
+			}
+			return null;
+		} finally {
+			unlockAll();
+			routing.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return all keys, sorted
+	 */
+	public int[] keysToArray() {
+		routing.readLock().lock();
+		lockAll();
+		try {
+			int total = 0;
+			for (Shard shard : shards) {
+				total += shard.tree.size();
+			}
+			int[] keyArray = new int[total];
+			int writeIndex = 0;
+			for (Shard shard : shards) {
+				int[] shardKeys = shard.tree.keysToArray();
+				System.arraycopy(shardKeys, 0, keyArray, writeIndex, shardKeys.length);
+				writeIndex += shardKeys.length;
+			}
+			return keyArray;
+		} finally {
+			unlockAll();
+			routing.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return all info, sorted by key
+	 */
+	public String[] infoToArray() {
+		routing.readLock().lock();
+		lockAll();
+		try {
+			int total = 0;
+			for (Shard shard : shards) {
+				total += shard.tree.size();
+			}
+			String[] infoArray = new String[total];
+			int writeIndex = 0;
+			for (Shard shard : shards) {
+				String[] shardInfo = shard.tree.infoToArray();
+				System.arraycopy(shardInfo, 0, infoArray, writeIndex, shardInfo.length);
+				writeIndex += shardInfo.length;
+			}
+			return infoArray;
+		} finally {
+			unlockAll();
+			routing.readLock().unlock();
+		}
+	}
+
+	/**
+	 * takes the read side of every shard lock, in index order; the callers
+	 * only read
+	 */
+	private void lockAll() {
+		for (Shard shard : shards) {
+			shard.lock.readLock().lock();
+		}
+	}
+
+	private void unlockAll() {
+		for (int i = shards.length - 1; i >= 0; i--) {
+			shards[i].lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * public void rebalanceShards()
+	 *
+	 * moves shard boundaries now, instead of waiting for the next automatic
+	 * pass. blocks all other operations while it runs.
+	 */
+	public void rebalanceShards() {
+		routing.writeLock().lock();
+		try {
+			rebalanceBoundaries();
+		} finally {
+			routing.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @pre the routing write lock is held (no other operation runs)
+	 * @post no two neighbouring shards differ by more than SKEW_FACTOR in
+	 *       size, unless fewer than MIN_MOVE keys would move or a single key
+	 *       range cannot be divided further
+	 */
+	private void rebalanceBoundaries() {
+		for (int i = 0; i + 1 < shards.length; i++) {
+			WAVLTree left = shards[i].tree;
+			WAVLTree right = shards[i + 1].tree;
+			int leftSize = left.size();
+			int rightSize = right.size();
+			int move = Math.abs(leftSize - rightSize) / 2;
+			if (move < MIN_MOVE) {
+				continue;
+			}
+
+			if (leftSize > SKEW_FACTOR * rightSize) {
+				// move the top keys of left over to right
+				int bound = firstKeyWithCountBelow(left, bounds[i], leftSize - move);
+				WAVLTree[] parts = left.split(bound);
+				shards[i].tree = parts[0];
+				shards[i + 1].tree = WAVLTree.join(parts[1], right);
+				bounds[i + 1] = bound;
+			} else if (rightSize > SKEW_FACTOR * leftSize) {
+				// move the bottom keys of right over to left
+				int bound = firstKeyWithCountBelow(right, bounds[i + 1], move);
+				WAVLTree[] parts = right.split(bound);
+				shards[i].tree = WAVLTree.join(left, parts[0]);
+				shards[i + 1].tree = parts[1];
+				bounds[i + 1] = bound;
+			}
+		}
+	}
+
+	/**
+	 * @pre 0 < count <= tree.size(), every key of tree is >= lowerBound
+	 * @return the smallest key b > lowerBound such that at least count keys
+	 *         of tree are < b. binary search over the key space, each step
+	 *         an O(log n) WAVLTree.rank.
+	 */
+	private static int firstKeyWithCountBelow(WAVLTree tree, int lowerBound, int count) {
+		long lo = (long) lowerBound + 1;
+		long hi = (long) Integer.MAX_VALUE;
+		while (lo < hi) {
+			long mid = (lo + hi) >>> 1;
+			if (tree.rank((int) (mid - 1)) >= count) {
+				hi = mid;
+			} else {
+				lo = mid + 1;
+			}
+		}
+		return (int) lo;
+	}
+}
@@ -0,0 +1,37 @@
+/**
+ *
+ * WAVLAugmentation
+ *
+ * An associative summary of the items of a subtree, kept in every node of
+ * an augmented WAVLTree next to its size (see WAVLTree.setAugmentation). an
+ * augmentation has an identity, a lift of one item (key and info) to a
+ * summary, and an associative combine; a node's aggregate is
+ * combine(combine(left, lift(node)), right). like size, it is recomputed
+ * by AugmentedNode.updateSize, so every rotation, insert and delete keeps it
+ * up to date at O(1) extra per node they already touch.
+ *
+ * the three kinds differ only in where the aggregate is stored:
+ * LongAugmentation and DoubleAugmentation keep it in a primitive field of
+ * the node, so neither updates nor range queries box; ObjectAugmentation
+ * takes any type, at one object per node.
+ *
+ * combine need not be commutative: range queries combine the pieces in key
+ * order.
+ *
+ */
+
+public abstract class WAVLAugmentation {
+
+	/**
+	 * only LongAugmentation, DoubleAugmentation and ObjectAugmentation
+	 */
+	WAVLAugmentation() {
+	}
+
+	/**
+	 * @pre the aggregates of left and right (node's children, AugmentedNodes
+	 *      or EXT) are up to date
+	 * @post node's aggregate covers its subtree
+	 */
+	abstract void update(WAVLTree.AugmentedNode node, WAVLTree.WAVLNode left, WAVLTree.WAVLNode right);
+}
@@ -0,0 +1,383 @@
+/**
+ *
+ * WAVLCore
+ *
+ * The key independent part of a WAVL Tree: node links, ranks, subtree
+ * sizes, rotations and the insert and delete rebalancing cases. the key
+ * and value specialized trees (LongWAVLTree, IntLongWAVLTree,
+ * GenericWAVLTree, BlockedWAVLTree) extend it and add only their node
+ * fields and search loops, so comparisons never box and those trees
+ * share one copy of the rebalancing cases. the other trees (WAVLTree,
+ * ArrayWAVLTree, OffHeapWAVLTree, PersistentWAVLTree, ConcurrentWAVLTree)
+ * still have their own, over their own node layouts.
+ *
+ * null is the external leaf (rank -1). a node's size is its weight (1 for
+ * one item per node, the key count for a block) plus the sizes of its
+ * children; rotations keep sizes without knowing the weights.
+ *
+ */
+
+abstract class WAVLCore<N extends WAVLCore.Node<N>> {
+
+	/**
+	 * static class Node
+	 *
+	 * links, rank and subtree size; subclasses add the item fields
+	 */
+	static class Node<N extends Node<N>> {
+		N left;
+		N right;
+		N parent;
+		int rank;
+		int size;
+	}
+
+	N root; // null when empty
+
+	/**
+	 * public boolean empty()
+	 *
+	 * @return: true iff the tree is empty
+	 */
+	public boolean empty() {
+		return (root == null);
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of items in the tree.
+	 */
+	public int size() {
+		return sizeOf(root);
+	}
+
+	static int sizeOf(Node<?> node) {
+		return (node == null) ? 0 : node.size;
+	}
+
+	static int rankOf(Node<?> node) {
+		return (node == null) ? -1 : node.rank;
+	}
+
+	/**
+	 * @pre leaf is a fresh node (rank 0, no children), leaf.size is its
+	 *      weight; parent is null only if the tree is empty
+	 * @post leaf is parent's left (asLeft) or right child, sizes and ranks
+	 *       are up to date
+	 * @return number of rebalancing operations
+	 */
+	final int insertLeaf(N parent, boolean asLeft, N leaf) {
+		leaf.parent = parent;
+		if (parent == null) {
+			root = leaf;
+			return 0;
+		}
+		if (asLeft) {
+			parent.left = leaf;
+		} else {
+			parent.right = leaf;
+		}
+		addSizeBetween(parent, null, leaf.size);
+		return insertRebalance(leaf);
+	}
+
+	/**
+	 * bottom up rebalancing after node was linked as a new leaf (rank 0).
+	 * sizes on the path are already up to date, rotations keep them so.
+	 *
+	 * @return number of promotions, demotions and rotations
+	 */
+	final int insertRebalance(N node) {
+		int ops = 0;
+		N par = node.parent;
+		while (par != null && par.rank == node.rank) {
+			// node is a 0-child
+			boolean isLeft = (par.left == node);
+			N sibling = isLeft ? par.right : par.left;
+			if (par.rank - rankOf(sibling) == 1) {
+				// case 1 - (0,1) parent: promote and bubble up
+				par.rank++;
+				ops++;
+				node = par;
+				par = node.parent;
+				continue;
+			}
+			// sibling is a 2-child
+			N inner = isLeft ? node.right : node.left;
+			if (node.rank - rankOf(inner) == 2) {
+				// case 2 - single rotation
+				rotateUp(node);
+				par.rank--;
+				ops += 2;
+			} else {
+				// case 3 - double rotation
+				rotateUp(inner);
+				rotateUp(inner);
+				inner.rank++;
+				node.rank--;
+				par.rank--;
+				ops += 5;
+			}
+			return ops;
+		}
+		return ops;
+	}
+
+	/**
+	 * removes the item of node from a tree of weight 1 nodes: a binary node
+	 * takes over its successor's item (moveItem), and the successor is
+	 * unlinked instead.
+	 *
+	 * @return number of rebalancing operations
+	 */
+	final int removeItem(N node) {
+		if (node.left != null && node.right != null) {
+			N successor = node.right;
+			while (successor.left != null) {
+				successor = successor.left;
+			}
+			moveItem(successor, node);
+			node = successor;
+		}
+		addSizeBetween(node, null, -1);
+		return unlink(node);
+	}
+
+	/**
+	 * @post to holds from's item. from is unlinked right after, so it need
+	 *       not be cleared.
+	 */
+	abstract void moveItem(N from, N to);
+
+	/**
+	 * @pre node has at most one child, and its own weight is already
+	 *      subtracted from its size and its ancestors' sizes
+	 * @post node is unlinked, its child takes its place
+	 * @return number of rebalancing operations
+	 */
+	final int unlink(N node) {
+		N child = (node.left != null) ? node.left : node.right;
+		N par = node.parent;
+		if (par == null) {
+			replaceChild(null, node, child);
+			return 0; // removed the root
+		}
+		boolean wasLeft = (par.left == node);
+		replaceChild(par, node, child);
+		return deleteRebalance(child, par, wasLeft);
+	}
+
+	/**
+	 * bottom up rebalancing after a node was unlinked from par. node may be
+	 * null (rank -1), so its side is passed explicitly.
+	 *
+	 * @return number of promotions, demotions and rotations
+	 */
+	final int deleteRebalance(N node, N par, boolean nodeIsLeft) {
+		int ops = 0;
+
+		if (par.left == null && par.right == null && par.rank == 1) {
+			// 2,2 leaf - demote and roll the problem up
+			par.rank = 0;
+			ops++;
+			node = par;
+			par = node.parent;
+			if (par == null) {
+				return ops;
+			}
+			nodeIsLeft = (par.left == node);
+		}
+
+		while (par.rank - rankOf(node) == 3) {
+			N sibling = nodeIsLeft ? par.right : par.left;
+
+			if (par.rank - sibling.rank == 2) {
+				// case 1 - (3,2): demote and bubble up
+				par.rank--;
+				ops++;
+			} else {
+				N inner = nodeIsLeft ? sibling.left : sibling.right;
+				N outer = nodeIsLeft ? sibling.right : sibling.left;
+
+				if (sibling.rank - rankOf(inner) == 2 && sibling.rank - rankOf(outer) == 2) {
+					// case 2 - (3,1) with (2,2) sibling: double demote, bubble up
+					par.rank--;
+					sibling.rank--;
+					ops += 2;
+				} else if (sibling.rank - rankOf(outer) == 1) {
+					// case 3 - single rotation, terminal
+					rotateUp(sibling);
+					sibling.rank++;
+					par.rank--;
+					ops += 3;
+					if (par.left == null && par.right == null) {
+						// par became a 2,2 leaf
+						par.rank--;
+						ops++;
+					}
+					return ops;
+				} else {
+					// case 4 - double rotation, terminal
+					rotateUp(inner);
+					rotateUp(inner);
+					inner.rank += 2;
+					par.rank -= 2;
+					sibling.rank--;
+					ops += 7;
+					return ops;
+				}
+			}
+			node = par;
+			par = node.parent;
+			if (par == null) {
+				return ops;
+			}
+			nodeIsLeft = (par.left == node);
+		}
+		return ops;
+	}
+
+	/**
+	 * @pre node != root
+	 * @post node takes its parent's place; sizes of both are recomputed
+	 */
+	final void rotateUp(N node) {
+		N par = node.parent;
+		N grand = par.parent;
+		N moved;
+
+		if (par.left == node) {
+			moved = node.right;
+			par.left = moved;
+			node.right = par;
+		} else {
+			moved = node.left;
+			par.right = moved;
+			node.left = par;
+		}
+		if (moved != null) {
+			moved.parent = par;
+		}
+		par.parent = node;
+		replaceChild(grand, par, node);
+
+		// par loses node's subtree but keeps moved, node takes par's place
+		int parSize = par.size;
+		par.size = parSize - node.size + sizeOf(moved);
+		node.size = parSize;
+	}
+
+	/**
+	 * @post newChild is in oldChild's place under par (or is the root, if
+	 *       par == null)
+	 */
+	final void replaceChild(N par, N oldChild, N newChild) {
+		if (par == null) {
+			root = newChild;
+		} else if (par.left == oldChild) {
+			par.left = newChild;
+		} else {
+			par.right = newChild;
+		}
+		if (newChild != null) {
+			newChild.parent = par;
+		}
+	}
+
+	/**
+	 * adds delta to the sizes from node up to, not including, top (null for
+	 * the root)
+	 */
+	static void addSizeBetween(Node<?> node, Node<?> top, int delta) {
+		while (node != top) {
+			node.size += delta;
+			node = node.parent;
+		}
+	}
+
+	/**
+	 * @pre 1 <= i <= size(), weight 1 nodes
+	 * @return the node of the i'th smallest item
+	 */
+	final N nodeAt(int i) {
+		N node = root;
+		while (true) {
+			int nodeIndex = sizeOf(node.left) + 1;
+			if (i == nodeIndex) {
+				return node;
+			} else if (i < nodeIndex) {
+				node = node.left;
+			} else {
+				i -= nodeIndex;
+				node = node.right;
+			}
+		}
+	}
+
+	/**
+	 * @return node of the minimal key, or null if the tree is empty
+	 */
+	final N first() {
+		N node = root;
+		if (node == null) {
+			return null;
+		}
+		while (node.left != null) {
+			node = node.left;
+		}
+		return node;
+	}
+
+	/**
+	 * @return node of the maximal key, or null if the tree is empty
+	 */
+	final N last() {
+		N node = root;
+		if (node == null) {
+			return null;
+		}
+		while (node.right != null) {
+			node = node.right;
+		}
+		return node;
+	}
+
+	/**
+	 * @return the next node in order, or null if node is the last one
+	 */
+	static <N extends Node<N>> N successor(N node) {
+		if (node.right != null) {
+			node = node.right;
+			while (node.left != null) {
+				node = node.left;
+			}
+			return node;
+		}
+		N par = node.parent;
+		while (par != null && par.right == node) {
+			node = par;
+			par = node.parent;
+		}
+		return par;
+	}
+
+	/**
+	 * @return the previous node in order, or null if node is the first one
+	 */
+	static <N extends Node<N>> N predecessor(N node) {
+		if (node.left != null) {
+			node = node.left;
+			while (node.right != null) {
+				node = node.right;
+			}
+			return node;
+		}
+		N par = node.parent;
+		while (par != null && par.left == node) {
+			node = par;
+			par = node.parent;
+		}
+		return par;
+	}
+}
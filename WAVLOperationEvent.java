@@ -0,0 +1,44 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ *
+ * WAVLOperationEvent
+ *
+ * JFR event for a slow WAVLTree insert or delete. only created when the
+ * tree's metrics are enabled (see WAVLTreeMetrics); committed when the
+ * operation took longer than both the metrics' slowOperationNanos and the
+ * JFR threshold of this event (1 ms unless configured otherwise).
+ *
+ */
+
+@Name("wavl.Operation")
+@Label("WAVL Tree Operation")
+@Category("WAVL Tree")
+@Description("A slow insert or delete on a WAVLTree")
+@Threshold("1 ms")
+@StackTrace(true)
+class WAVLOperationEvent extends jdk.jfr.Event {
+
+	@Label("Operation")
+	String operation;
+
+	@Label("Key")
+	int key;
+
+	@Label("Rebalancing Operations")
+	int rebalancingOps;
+
+	@Label("Tree Size")
+	int treeSize;
+
+	/**
+	 * System.nanoTime() at begin(), for the metrics' own threshold.
+	 * transient fields are not recorded.
+	 */
+	transient long startNanos;
+}
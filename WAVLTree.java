@@ -1,9 +1,30 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 /**
  *
  * WAVLTree
  *
  * An implementation of a WAVL Tree. (Haupler, Sen & Tarajan ‘15)
  *
+ * not thread safe for writers. searches are read only, so readers may
+ * share a tree (under the read side of a read-write lock), unless finger
+ * search is turned on with setFingerEnabled(true): search, searchNode and
+ * range then move the finger, a write, and need an exclusive lock. with
+ * -Dwavl.metrics=true searches also bump the comparison counters, which
+ * concurrent readers may undercount.
+ *
  */
 
 public class WAVLTree {
@@ -14,6 +35,49 @@ public class WAVLTree {
 	 * EXT's parent is null at all times.
 	 */
 	public static final WAVLNode EXT = new WAVLNode(-1, null, 0, -1);
+	/**
+	 * finger: the most recently accessed node, searches start from it.
+	 * maxNode: the node with the largest key, for the append fast path.
+	 * both are null when unknown, and are reset whenever the root is set.
+	 * maxNode is written only by insert and delete, never by a search.
+	 */
+	private WAVLNode finger;
+	private WAVLNode maxNode;
+	private boolean fingerEnabled;
+	private boolean appendEnabled = true;
+	/**
+	 * number of key comparisons done by searchNode and the append fast
+	 * path, to measure what the finger saves. counted only when
+	 * METRICS_ENABLED, so the hot path does no extra write otherwise.
+	 */
+	private long keyComparisons;
+	/**
+	 * rebalancing metrics are compiled in only with -Dwavl.metrics=true:
+	 * every recording site checks this constant first, so the JIT removes
+	 * them otherwise. metrics is null until enableMetrics().
+	 */
+	static final boolean METRICS_ENABLED = Boolean.getBoolean("wavl.metrics");
+	private WAVLTreeMetrics metrics;
+	/**
+	 * relaxed mode: deletes unlink nodes without rebalancing (see
+	 * setRelaxedDeletes). relaxedDeletes counts them since the last rebuild.
+	 */
+	private boolean relaxed;
+	private int relaxedDeletes;
+	/**
+	 * pool of deleted nodes for later inserts, linked through their right
+	 * field. at most poolCapacity nodes are kept; 0 (the default) disables
+	 * the pool.
+	 */
+	private WAVLNode pool;
+	private int poolSize;
+	private int poolCapacity;
+	/**
+	 * range aggregate kept in every node next to its size, or null (see
+	 * setAugmentation)
+	 */
+	private WAVLAugmentation augmentation;
+
 	/**
 	 * @post: node is this's root, and it's parent is null.
 	 * 
@@ -21,6 +85,8 @@ public class WAVLTree {
 	public void setRoot(WAVLNode node) {
 		this.root = node;
 		node.setParent(null);
+		this.finger = null;
+		this.maxNode = null;
 	}
 
 	/**
@@ -69,19 +135,27 @@ public class WAVLTree {
 	 * @pre: root!=null
 	 * @return: the leaf that will be parent of inserted key, or node
 	 *        with key in tree, if exists
+	 * @post: finger is the returned node, if finger search is enabled
 	 * 
-	 * the function use an iterative binary search on the tree
+	 * the function use an iterative binary search on the tree, starting from
+	 * the lowest ancestor of the finger whose subtree can hold k (see
+	 * fingerStart), so a search close to the previous one costs O(log d)
+	 * comparisons, d being the distance in keys, instead of O(log n)
 	 * 
 	 */
 	public WAVLNode searchNode(int k) {
-		WAVLNode current = root;
+		long comparisonsBefore = keyComparisons;
+		WAVLNode current = fingerStart(k);
 		if (current == EXT) {
 			return EXT;
 		}
 		while (true)
 		{// while current is not an external leaf
+			if (METRICS_ENABLED) {
+				keyComparisons++;
+			}
 			if (current.getKey() == k) {// if key exists in tree, return it
-				return current;
+				break;
 			}
 
 			// if k bigger then current key and right child exists, go right
@@ -91,7 +165,7 @@ public class WAVLTree {
 					current = current.getRight();
 				}
 				else {
-					return current;
+					break;
 				}
 			}
 			
@@ -100,11 +174,161 @@ public class WAVLTree {
 					current = current.getLeft();
 				}
 				else {
+					break;
+				}
+			}
+
+		}
+		if (fingerEnabled) {
+			finger = current;
+		}
+		if (METRICS_ENABLED && metrics != null) {
+			metrics.searchDepth.record((int) (keyComparisons - comparisonsBefore));
+		}
+		return current;
+	}
+
+	/**
+	 * private WAVLNode fingerStart(int k)
+	 * 
+	 * @return the node searchNode(k) starts its descent from: the root, or
+	 *         the lowest ancestor of finger whose subtree covers k.
+	 * 
+	 * walks up from the finger. when k is right of the finger, the subtree of
+	 * a left child covers k iff k < parent key (its lower bound is already
+	 * below the finger); a right child covers no more than its parent, so
+	 * only left-child steps cost a comparison. symmetric for k left of the
+	 * finger.
+	 */
+	private WAVLNode fingerStart(int k) {
+		WAVLNode current = finger;
+		if (!fingerEnabled || current == null) {
+			return root;
+		}
+		if (METRICS_ENABLED) {
+			keyComparisons++;
+		}
+		if (k == current.getKey()) {
+			return current;
+		}
+		boolean goRight = k > current.getKey();
+		while (current.getParent() != null) {
+			WAVLNode parent = current.getParent();
+			boolean isLeft = parent.getLeft() == current;
+			if (isLeft == goRight) {
+				if (METRICS_ENABLED) {
+					keyComparisons++;
+				}
+				if (goRight ? k < parent.getKey() : k > parent.getKey()) {
 					return current;
 				}
 			}
+			current = parent;
+		}
+		return current;
+	}
+
+	/**
+	 * private WAVLNode appendParent(int k)
+	 * 
+	 * @pre: tree is not empty
+	 * @return the node with the largest key if k is larger than all keys
+	 *         (k then goes onto the right spine as its right child),
+	 *         otherwise null
+	 * 
+	 * one comparison instead of a search; the largest node is found once and
+	 * then kept up to date by insert and delete.
+	 */
+	private WAVLNode appendParent(int k) {
+		if (!appendEnabled) {
+			return null;
+		}
+		if (maxNode == null) {
+			WAVLNode node = root;
+			while (node.hasRight()) {
+				node = node.getRight();
+			}
+			maxNode = node;
+		}
+		if (METRICS_ENABLED) {
+			keyComparisons++;
+		}
+		return (k > maxNode.getKey()) ? maxNode : null;
+	}
+
+	/**
+	 * public void setFingerEnabled(boolean enabled)
+	 * 
+	 * turns finger search on or off (the default). with it off, every
+	 * search starts from the root. the finger pays off only when successive
+	 * keys are close: it saves most comparisons on sorted and near-sorted
+	 * streams, but a random stream walks up from the finger first and costs
+	 * more than a search from the root (see bench/FingerSearchReport). with
+	 * it on, searches write the finger (see the class doc).
+	 */
+	public void setFingerEnabled(boolean enabled) {
+		this.fingerEnabled = enabled;
+		this.finger = null;
+	}
 
+	/**
+	 * public void setAppendFastPathEnabled(boolean enabled)
+	 * 
+	 * turns the append fast path on (the default) or off. with it on, an
+	 * insert of a key larger than all keys costs one comparison (see
+	 * appendParent); any other insert pays that one comparison extra.
+	 */
+	public void setAppendFastPathEnabled(boolean enabled) {
+		this.appendEnabled = enabled;
+		this.maxNode = null;
+	}
+
+	/**
+	 * public long getKeyComparisons()
+	 * 
+	 * @return number of key comparisons made by searches and inserts so far;
+	 *         always 0 unless the JVM runs with -Dwavl.metrics=true
+	 */
+	public long getKeyComparisons() {
+		return keyComparisons;
+	}
+
+	/**
+	 * public WAVLTreeMetrics enableMetrics(long slowOperationNanos)
+	 * 
+	 * starts recording rebalancing metrics for this tree. inserts and deletes
+	 * slower than slowOperationNanos are also reported as JFR events.
+	 * 
+	 * @pre: the JVM runs with -Dwavl.metrics=true, slowOperationNanos >= 0
+	 * @return the metrics, updated by every later operation
+	 * @throws IllegalStateException if metrics are not compiled in
+	 */
+	public WAVLTreeMetrics enableMetrics(long slowOperationNanos) {
+		if (!METRICS_ENABLED) {
+			throw new IllegalStateException("metrics are disabled, run with -Dwavl.metrics=true");
+		}
+		if (metrics == null) {
+			metrics = new WAVLTreeMetrics(slowOperationNanos);
+		} else {
+			metrics.setSlowOperationNanos(slowOperationNanos);
 		}
+		return metrics;
+	}
+
+	/**
+	 * public void disableMetrics()
+	 * 
+	 * @post: no more metrics are recorded; getMetrics() returns null
+	 */
+	public void disableMetrics() {
+		metrics = null;
+	}
+
+	/**
+	 * @return the metrics of this tree, or null if they are not enabled
+	 */
+	public WAVLTreeMetrics getMetrics() {
+		return metrics;
 	}
 
 	/**
@@ -117,7 +341,7 @@ public class WAVLTree {
 	 * 
 	 * TODO - EXTnull
 	 */
-	public void updateSizeToRoot(WAVLNode node) {
+	public static void updateSizeToRoot(WAVLNode node) {
 		while (node != null) {
 			node.updateSize();
 			node = node.getParent();
@@ -132,22 +356,92 @@ public class WAVLTree {
 	 * remain valid (keep its invariants). returns the number of rebalancing
 	 * operations, or 0 if no rebalancing operations were necessary. returns -1
 	 * if an item with key k already exists in the tree.
+	 * 
+	 * with metrics enabled, the operation is timed for WAVLOperationEvent
 	 */
 	public int insert(int k, String i) {
+		WAVLOperationEvent event = beginOperation();
+		WAVLNode insert_to = locate(k);
+		if (insert_to != EXT && insert_to.key == k) { // if key in tree return -1
+			endOperation(event, "insert", k, -1);
+			return -1;
+		}
+		return insertAt(insert_to, k, i, event);
+	}
+
+	/**
+	 * @pre insert_to is locate(k), k is not in the tree, event is
+	 *      beginOperation() from before the locate
+	 * @post (k, i) is inserted as by linkNewNode, and event is ended as an
+	 *       insert. put, putIfAbsent, compute and merge insert through here,
+	 *       so they are timed like insert.
+	 * @return number of rebalancing operations
+	 */
+	private int insertAt(WAVLNode insert_to, int k, String i, WAVLOperationEvent event) {
+		int ops = linkNewNode(insert_to, k, i);
+		endOperation(event, "insert", k, ops);
+		return ops;
+	}
+
+	/**
+	 * @return the event timing an operation that starts now, or null if
+	 *         metrics (or the JFR event) are off
+	 */
+	private WAVLOperationEvent beginOperation() {
+		if (METRICS_ENABLED && metrics != null) {
+			return metrics.beginOperation();
+		}
+		return null;
+	}
+
+	/**
+	 * @post event (from beginOperation, may be null) is committed if the
+	 *       operation was slow enough
+	 */
+	private void endOperation(WAVLOperationEvent event, String operation, int k, int ops) {
+		if (METRICS_ENABLED && event != null && metrics != null) {
+			metrics.endOperation(event, operation, k, ops, size());
+		}
+	}
+
+	/**
+	 * private WAVLNode locate(int k)
+	 * 
+	 * @return EXT if the tree is empty, otherwise the node with key k, if
+	 *         exists, or the node that will be parent of an inserted k: the
+	 *         largest node if k is beyond max, else searchNode(k)
+	 */
+	private WAVLNode locate(int k) {
+		if (empty()) {
+			return EXT;
+		}
+		WAVLNode node = appendParent(k);
+		return (node != null) ? node : searchNode(k);
+	}
+
+	/**
+	 * @pre insert_to is locate(k), k is not in the tree
+	 * @post a new node (k, i) is linked under insert_to (or is the root, if
+	 *       insert_to is EXT), and the tree is rebalanced
+	 * @return number of rebalancing operations
+	 */
+	private int linkNewNode(WAVLNode insert_to, int k, String i) {
 		// 1.==============Insert new node
 
 		int ops_counter = 0; // init balancing operations counter
-		WAVLNode new_node = new WAVLNode(k, i); // init new node with info
 
-		if (empty()) { // if tree is empty
-			this.setRoot(new_node); // set new_node as root
+		if (insert_to == EXT) { // if tree is empty
+			this.setRoot(newNode(k, i)); // set new_node as root
 			return ops_counter;
 		}
 
-		WAVLNode insert_to = searchNode(k); // find father
-
-		if (insert_to.key == new_node.key) { // if key in tree return -1
-			return -1;
+		// allocated only now, so a duplicate key costs no node
+		WAVLNode new_node = newNode(k, i); // init new node with info
+		if (insert_to == maxNode && k > insert_to.getKey()) {
+			maxNode = new_node;
+		}
+		if (fingerEnabled) {
+			finger = new_node;
 		}
 
 		if (k > insert_to.getKey()) // set new node as right or left child
@@ -171,43 +465,200 @@ public class WAVLTree {
 		 * create a bubbling problem.
 		 */
 
-		while (toBalance.insertIsCase1()) {
+		int promotions = 0;
+		while (toBalance != null && toBalance.insertIsCase1()) {
 			toBalance.insertUpdateCase1();
 			ops_counter++; // increment ops counter
+			promotions++;
 			toBalance = toBalance.getParent(); // check parent
 
 		}
+		if (METRICS_ENABLED && metrics != null) {
+			metrics.insertCase1 += promotions;
+			metrics.promotionChain.record(promotions);
+		}
 
 		/*
 		 * if case 2, call insertUpdateCase2
 		 */
+		if (toBalance == null) { // promoted the root
+			return ops_counter;
+		}
 		if (toBalance.insertIsCase2()) {
 			toBalance.insertUpdateCase2();
+			fixRoot(toBalance.getParent());
 			ops_counter += 2;
-
+			if (METRICS_ENABLED && metrics != null) {
+				metrics.insertCase2++;
+				metrics.singleRotations++;
+			}
+		} else if (toBalance.insertIsCase3()) {
 			/*
-			 * start resizing from current node (now right/left child after
-			 * single rotation)
+			 * insertUpdateCase3() 5 ops - 2 rotations, 3 pro/dem rank
 			 */
-			updateSizeToRoot(toBalance);
-		}
-
-		/*
-		 * insertUpdateCase3() 5 ops - 2 rotations, 3 pro/dem rank
-		 */
-
-		if (toBalance.insertIsCase3()) {
 			toBalance.insertUpdateCase3();
+			fixRoot(toBalance.getParent());
 			ops_counter += 5;
+			if (METRICS_ENABLED && metrics != null) {
+				metrics.insertCase3++;
+				metrics.doubleRotations++;
+			}
 
 		}
-		//update size up to root
+		/*
+		 * update size up to root, starting from current node (after a
+		 * rotation, now the right/left child of the new subtree root)
+		 */
 		updateSizeToRoot(toBalance);
 
 		// else - no problem, parent is a valid WAVL NODE
 		return ops_counter;
 	}
 
+	/**
+	 * @post: if top has no parent after a rotation, top is the root
+	 */
+	private void fixRoot(WAVLNode top) {
+		if (top.getParent() == null) {
+			this.root = top;
+		}
+	}
+
+	/**
+	 * public String put(int k, String i)
+	 *
+	 * sets the info of key k to i, inserting the item if k is not in the
+	 * tree. an existing item is updated in place, from the node the search
+	 * ended at: no rebalancing, no allocation. returns the previous info of
+	 * k, or null if it was inserted. throws NullPointerException if i is
+	 * null.
+	 */
+	public String put(int k, String i) {
+		Objects.requireNonNull(i);
+		WAVLOperationEvent event = beginOperation();
+		WAVLNode node = locate(k);
+		if (node != EXT && node.key == k) {
+			return setInfo(node, i);
+		}
+		insertAt(node, k, i, event);
+		return null;
+	}
+
+	/**
+	 * public String putIfAbsent(int k, String i)
+	 *
+	 * inserts (k, i) if k is not in the tree. returns the info of k if it
+	 * was already there (the tree is unchanged), or null if it was inserted.
+	 * one search either way. throws NullPointerException if i is null.
+	 */
+	public String putIfAbsent(int k, String i) {
+		Objects.requireNonNull(i);
+		WAVLOperationEvent event = beginOperation();
+		WAVLNode node = locate(k);
+		if (node != EXT && node.key == k) {
+			return node.value;
+		}
+		insertAt(node, k, i, event);
+		return null;
+	}
+
+	/**
+	 * public String replace(int k, String i)
+	 *
+	 * sets the info of key k to i, only if k is in the tree, in place.
+	 * returns the previous info, or null if k is not in the tree (nothing
+	 * is inserted). throws NullPointerException if i is null.
+	 */
+	public String replace(int k, String i) {
+		Objects.requireNonNull(i);
+		WAVLNode node = locate(k);
+		if (node != EXT && node.key == k) {
+			return setInfo(node, i);
+		}
+		return null;
+	}
+
+	/**
+	 * public interface Remapping
+	 *
+	 * remapping function of compute: the new info of key k, given its current
+	 * info, or null if k is not in the tree. returning null removes the item.
+	 */
+	@FunctionalInterface
+	public interface Remapping {
+		String apply(int k, String info);
+	}
+
+	/**
+	 * public String compute(int k, Remapping remapping)
+	 *
+	 * sets the info of k to remapping.apply(k, current info or null), like
+	 * Map.compute: an existing item is updated in place, a missing one is
+	 * inserted, and a null result deletes the item (or leaves k absent).
+	 * only an insert or a delete rebalances. returns the new info, or null.
+	 * throws NullPointerException if remapping is null.
+	 */
+	public String compute(int k, Remapping remapping) {
+		Objects.requireNonNull(remapping);
+		WAVLOperationEvent event = beginOperation();
+		WAVLNode node = locate(k);
+		boolean present = (node != EXT && node.key == k);
+		String info = remapping.apply(k, present ? node.value : null);
+		if (info == null) {
+			if (present) {
+				delete(k); // starts from the finger (if enabled), which is on node
+			}
+			return null;
+		}
+		if (present) {
+			setInfo(node, info);
+		} else {
+			insertAt(node, k, info, event);
+		}
+		return info;
+	}
+
+	/**
+	 * public String merge(int k, String i, BinaryOperator<String> remapping)
+	 *
+	 * like Map.merge: inserts (k, i) if k is not in the tree, else sets its
+	 * info to remapping.apply(current info, i) in place, deleting the item if
+	 * that is null. returns the new info, or null if the item was deleted.
+	 * throws NullPointerException if i or remapping is null, as Map.merge
+	 * does, so a null info is never inserted.
+	 */
+	public String merge(int k, String i, BinaryOperator<String> remapping) {
+		Objects.requireNonNull(i);
+		Objects.requireNonNull(remapping);
+		WAVLOperationEvent event = beginOperation();
+		WAVLNode node = locate(k);
+		if (node == EXT || node.key != k) {
+			insertAt(node, k, i, event);
+			return i;
+		}
+		String info = remapping.apply(node.value, i);
+		if (info == null) {
+			delete(k); // starts from the finger (if enabled), which is on node
+			return null;
+		}
+		setInfo(node, info);
+		return info;
+	}
+
+	/**
+	 * @post node holds info i; aggregates above it are recomputed if the tree
+	 *       is augmented. no structural change.
+	 * @return the previous info
+	 */
+	private String setInfo(WAVLNode node, String i) {
+		String previous = node.value;
+		node.value = i;
+		if (augmentation != null) {
+			updateSizeToRoot(node);
+		}
+		return previous;
+	}
+
 	/**
 	 * public int delete(int k)
 	 *
@@ -218,15 +669,37 @@ public class WAVLTree {
 	 * 
 	 * start rebalancing and resizing from current, after deletion phase
 	 * 
+	 * with metrics enabled, the operation is timed for WAVLOperationEvent
+	 * 
 	 */
 	public int delete(int k) {
+		if (METRICS_ENABLED && metrics != null) {
+			WAVLOperationEvent event = metrics.beginOperation();
+			int ops = deleteNode(k);
+			metrics.endOperation(event, "delete", k, ops, size());
+			return ops;
+		}
+		return deleteNode(k);
+	}
+
+	private int deleteNode(int k) {
+		if (relaxed) {
+			return deleteRelaxed(k);
+		}
 		int ops_counter = 0;
 		WAVLNode to_delete = searchNode(k); // find node to be deleted
 		WAVLNode to_balance; // node to start balancing from
 
-		if (to_delete.getKey() != k) {
+		if (to_delete == EXT || to_delete.getKey() != k) {
 			return -1; // if not in tree, return -1
 		}
+		// to_delete leaves the tree, don't keep pointers to it
+		if (finger == to_delete) {
+			finger = null;
+		}
+		if (maxNode == to_delete) {
+			maxNode = null;
+		}
 
 		// 1. Node deletion and transplant
 
@@ -237,14 +710,16 @@ public class WAVLTree {
 			 * start rebalancing from to_delete parent,
 			 * delete the leaf
 			 */
-			if (to_balance.getParent()!=null){ //if not root, set to_balance 
+			if (to_delete.getParent()!=null){ //if not root, set to_balance 
 				to_balance = to_delete.getParent();
 				to_delete.deleteLeaf();
+				recycle(to_delete);
 			}
 			else { //to_delete is the root - parent is null
 				// set root as EXT
 				//TODO - maybe create setRoot(WAVLNode) func
 				this.setRoot(EXT);
+				recycle(to_delete);
 				return 0;
 			}
 
@@ -254,10 +729,17 @@ public class WAVLTree {
 
 		else if (to_delete.isUnary()) {
 
+			if (to_delete.getParent() == null) {
+				// unary root: its only child is a leaf, and the new root
+				this.setRoot(to_delete.hasLeft() ? to_delete.left : to_delete.right);
+				recycle(to_delete);
+				return 0;
+			}
 			to_delete.deleteUnary();
 
 			to_balance = to_delete.getParent(); // start balancing from
 												// to_delete parent
+			recycle(to_delete);
 		}
 
 		// c. if not a leaf or unary, to_delete is a binary node - has both
@@ -275,7 +757,12 @@ public class WAVLTree {
 			 * on during resizing of path from successor original parent
 			 * 
 			 */
-			to_balance = transplant(to_delete);
+			boolean deletingRoot = (to_delete == this.root);
+			to_balance = to_delete.transplant();
+			if (deletingRoot) { // the successor took its place, above its left child
+				this.root = to_delete.left.getParent();
+			}
+			recycle(to_delete);
 
 			to_balance.updateSize();
 
@@ -307,6 +794,9 @@ public class WAVLTree {
 		if (to_balance.deleteIs22Leaf()) {
 			to_balance.deleteUpdate22Leaf();
 			ops_counter++;
+			if (METRICS_ENABLED && metrics != null) {
+				metrics.delete22Leaf++;
+			}
 			to_balance.updateSize(); // decrease size by 1
 			to_balance = to_balance.getParent();
 		}
@@ -321,13 +811,20 @@ public class WAVLTree {
 			if (to_balance.deleteIsCase1()) {
 				to_balance.deleteUpdateCase1();
 				ops_counter++;
+				if (METRICS_ENABLED && metrics != null) {
+					metrics.deleteCase1++;
+				}
 			} else {
 				to_balance.deleteUpdateCase2();
 				ops_counter += 2;
+				if (METRICS_ENABLED && metrics != null) {
+					metrics.deleteCase2++;
+				}
 			}
-			to_balance.size--; // decrease size
+			to_balance.updateSize(); // decrease size
 			to_balance = to_balance.getParent();
 		}
+		boolean rotated = false;
 
 		/*
 		 * if there are no more case 1 or 2, and balance is not null, (in case
@@ -343,21 +840,228 @@ public class WAVLTree {
 			 * demotion
 			 */
 			ops_counter += to_balance.deleteUpdateCase3();
+			fixRoot(to_balance.getParent());
 			updateSizeToRoot(to_balance.getParent());
+			rotated = true;
+			if (METRICS_ENABLED && metrics != null) {
+				metrics.deleteCase3++;
+				metrics.singleRotations++;
+			}
 
-		}
-		if (to_balance != null && to_balance.deleteIsCase4()) {
+		} else if (to_balance != null && to_balance.deleteIsCase4()) {
 			to_balance.deleteUpdateCase4();
 			ops_counter += 7; // 2 rotations + 5 pro/dem
+			fixRoot(to_balance.getParent());
 			updateSizeToRoot(to_balance.getParent());
+			rotated = true;
+			if (METRICS_ENABLED && metrics != null) {
+				metrics.deleteCase4++;
+				metrics.doubleRotations++;
+			}
 		}
 
 		/*
-		 * else - balance is a valid wavl node
+		 * else - balance is a valid wavl node, but the sizes (and aggregates)
+		 * from it up to the root still count the deleted item
 		 */
+		if (!rotated) {
+			updateSizeToRoot(to_balance);
+		}
 		return ops_counter;
 	}
 
+	/**
+	 * public void setNodePoolCapacity(int capacity)
+	 *
+	 * keeps up to capacity deleted nodes for reuse by later inserts, instead
+	 * of allocating a new node for every insert and dropping one for the GC
+	 * on every delete. 0 disables the pool.
+	 *
+	 * @pre: capacity >= 0
+	 * @post: the pool holds at most capacity nodes
+	 */
+	public void setNodePoolCapacity(int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("negative pool capacity " + capacity);
+		}
+		this.poolCapacity = capacity;
+		while (poolSize > capacity) {
+			pool = pool.right;
+			poolSize--;
+		}
+	}
+
+	/**
+	 * @return number of nodes waiting in the pool
+	 */
+	public int getNodePoolSize() {
+		return poolSize;
+	}
+
+	/**
+	 * @return a leaf with key k and info i: from the pool if it has one,
+	 *         reset to the state of new WAVLNode(k, i), else a new node
+	 */
+	private WAVLNode newNode(int k, String i) {
+		WAVLNode node = pool;
+		if (node == null) {
+			node = (augmentation != null) ? new AugmentedNode(k, i, 1, 0, augmentation) : new WAVLNode(k, i);
+		} else {
+			pool = node.right;
+			poolSize--;
+			node.key = k;
+			node.value = i;
+			node.rank = 0;
+			node.size = 1;
+			node.left = EXT;
+			node.right = EXT;
+			node.parent = null;
+		}
+		if (augmentation != null) {
+			augmentation.update((AugmentedNode) node, EXT, EXT);
+		}
+		return node;
+	}
+
+	/**
+	 * @pre: node was unlinked from the tree, and nothing points to it
+	 * @post: node is in the pool, unless it is full; it holds no references
+	 *        into the tree or to its info
+	 */
+	private void recycle(WAVLNode node) {
+		if (poolSize >= poolCapacity) {
+			return;
+		}
+		node.value = null;
+		node.parent = null;
+		if (node instanceof AugmentedNode) {
+			((AugmentedNode) node).aggregateObject = null;
+		}
+		node.left = EXT;
+		node.right = pool;
+		pool = node;
+		poolSize++;
+	}
+
+	/**
+	 * public void setRelaxedDeletes(boolean enabled)
+	 *
+	 * turns deletion without rebalancing on or off. in relaxed mode, delete
+	 * only unlinks the node and decrements the sizes above it; ranks are
+	 * left as they are (Haeupler, Sen & Tarjan: the height stays O(log m), m
+	 * the number of inserts, since insert rebalancing still works with rank
+	 * differences above 2). once relaxed deletes since the last rebuild
+	 * outnumber the items left, the tree is rebuilt perfectly balanced in
+	 * O(n), so the rebuild is amortized O(1) per delete and the height stays
+	 * O(log n). join, split, the set operations and insertAll/deleteAll
+	 * rebuild a tree with relaxed deletes first, since they need its ranks.
+	 *
+	 * @post: turning the mode off rebuilds the tree if it is not a valid
+	 *        WAVL tree, so the regular delete can rebalance again
+	 */
+	public void setRelaxedDeletes(boolean enabled) {
+		if (relaxed && !enabled && relaxedDeletes > 0) {
+			rebuild();
+		}
+		this.relaxed = enabled;
+	}
+
+	/**
+	 * public void rebuild()
+	 *
+	 * rebuilds the tree perfectly balanced from its items, in O(n). ranks
+	 * become 1 + the larger child rank, a valid WAVL tree.
+	 */
+	public void rebuild() {
+		relaxedDeletes = 0;
+		if (empty()) { // root stays EXT; buildRec needs at least one item
+			return;
+		}
+		int[] keys = keysToArray();
+		String[] values = infoToArray();
+		this.setRoot(buildRec(keys, values, 0, keys.length, augmentation));
+	}
+
+	/**
+	 * @post: the tree is a valid WAVL tree. join, split, the set operations
+	 *        and the batches rely on the rank rules, which relaxed deletes
+	 *        break, so they call this first.
+	 */
+	private void restoreRanks() {
+		if (relaxedDeletes > 0) {
+			rebuild();
+		}
+	}
+
+	/**
+	 * delete(k) in relaxed mode: a binary node takes over the key and info of
+	 * its successor, which is unlinked instead. no rank changes, so it
+	 * returns 0 rebalancing operations, or -1 if k is not in the tree.
+	 */
+	private int deleteRelaxed(int k) {
+		if (empty()) {
+			return -1;
+		}
+		WAVLNode node = searchNode(k);
+		if (node.getKey() != k) {
+			return -1;
+		}
+		WAVLNode target = node;
+		if (node.left != EXT && node.right != EXT) {
+			target = node.right;
+			while (target.left != EXT) {
+				target = target.left;
+			}
+			node.key = target.key;
+			node.value = target.value;
+		}
+		if (finger == target || finger == node) {
+			finger = null;
+		}
+		if (maxNode == target || maxNode == node) {
+			maxNode = null;
+		}
+
+		// target has at most one child: splice it out
+		WAVLNode child = (target.left != EXT) ? target.left : target.right;
+		WAVLNode parent = target.parent;
+		if (child != EXT) {
+			child.parent = parent;
+		}
+		if (parent == null) {
+			this.root = child;
+		} else if (parent.left == target) {
+			parent.left = child;
+		} else {
+			parent.right = child;
+		}
+		updateSizeToRoot(parent);
+		recycle(target);
+
+		if (++relaxedDeletes > size()) {
+			rebuild();
+		}
+		return 0;
+	}
+
+	/**
+	 * public double averageDepth()
+	 *
+	 * Returns the average depth of the items (the root has depth 0), in
+	 * O(n). with relaxed deletes, this shows how far the tree drifted from
+	 * balance.
+	 */
+	public double averageDepth() {
+		return empty() ? 0 : (double) depthSumRec(this.root, 0) / size();
+	}
+
+	private static long depthSumRec(WAVLNode node, int depth) {
+		if (node == EXT) {
+			return 0;
+		}
+		return depth + depthSumRec(node.left, depth + 1) + depthSumRec(node.right, depth + 1);
+	}
+
 	/**
 	 * public String min()
 	 *
@@ -365,7 +1069,10 @@ public class WAVLTree {
 	 * if the tree is empty
 	 */
 	public String min() {
-		WAVLNode minNode = this.getRoot();
+		if (empty()) {
+			return null;
+		}
+		WAVLNode minNode = this.root;
 		
 		while (minNode.hasLeft()) {
 			minNode = minNode.getLeft();
@@ -380,7 +1087,10 @@ public class WAVLTree {
 	 * the tree is empty
 	 */
 	public String max() {
-		WAVLNode maxNode = this.getRoot();
+		if (empty()) {
+			return null;
+		}
+		WAVLNode maxNode = this.root;
 		
 		while (maxNode.hasRight()) {
 			maxNode = maxNode.getRight();
@@ -397,7 +1107,9 @@ public class WAVLTree {
 	public int[] keysToArray() {
 		int[] keyArray = new int[this.size()];
 		
-		keysToArrayRec(this.getRoot(), keyArray, 0);
+		if (!this.empty()) {
+			keysToArrayRec(this.root, keyArray, 0);
+		}
 		
 		return keyArray;
 	}
@@ -423,7 +1135,9 @@ public class WAVLTree {
 	public String[] infoToArray() {
 		String[] infoArray = new String[this.size()];
 
-		infoToArrayRec(this.getRoot(), infoArray, 0);
+		if (!this.empty()) {
+			infoToArrayRec(this.root, infoArray, 0);
+		}
 		
 		return infoArray;
 	}
@@ -441,52 +1155,987 @@ public class WAVLTree {
 	}
 
 	/**
-	 * public int size()
-	 *
-	 * Returns the number of nodes in the tree.
+	 * public static WAVLTree fromSortedArrays(int[] keys, String[] values)
+	 *
+	 * the inverse of keysToArray()/infoToArray(): builds a valid WAVL tree
+	 * holding keys[i] with values[i], in O(n) and without any rebalancing.
+	 *
+	 * @pre keys is sorted in strictly ascending order
+	 * @pre keys.length == values.length
+	 * @post keysToArray() equals keys and infoToArray() equals values
+	 */
+	public static WAVLTree fromSortedArrays(int[] keys, String[] values) {
+		checkBulkInput(keys, values);
+		for (int i = 1; i < keys.length; i++) {
+			if (keys[i - 1] >= keys[i]) {
+				throw new IllegalArgumentException("keys are not strictly ascending at index " + i);
+			}
+		}
+		WAVLTree tree = new WAVLTree();
+		if (keys.length > 0) {
+			tree.setRoot(buildRec(keys, values, 0, keys.length, null));
+		}
+		return tree;
+	}
+
+	/**
+	 * public static WAVLTree fromArrays(int[] keys, String[] values)
+	 *
+	 * builds a WAVL tree from unsorted input: the items are sorted with
+	 * Arrays.parallelSort and the tree is then built divide and conquer on
+	 * the common ForkJoinPool. O(n log n) work for the sort, O(n) for the
+	 * build. duplicate keys keep their first value, same as repeated insert.
+	 *
+	 * @pre keys.length == values.length
+	 */
+	public static WAVLTree fromArrays(int[] keys, String[] values) {
+		checkBulkInput(keys, values);
+		int[] sortedKeys = new int[keys.length];
+		String[] sortedValues = new String[keys.length];
+		int distinct = sortDistinct(keys, values, sortedKeys, sortedValues);
+
+		WAVLTree tree = new WAVLTree();
+		if (distinct > 0) {
+			tree.setRoot(ForkJoinPool.commonPool().invoke(
+					new BuildTask(sortedKeys, sortedValues, 0, distinct)));
+		}
+		return tree;
+	}
+
+	/**
+	 * sorts (key, index) pairs packed in a long with Arrays.parallelSort, so
+	 * equal keys stay in input order, and keeps the first of equal keys.
+	 *
+	 * @pre sortedKeys.length >= keys.length, and the same for sortedValues
+	 *      unless values is null (then sortedValues is ignored)
+	 * @return number of distinct keys written to sortedKeys/sortedValues
+	 */
+	private static int sortDistinct(int[] keys, String[] values, int[] sortedKeys,
+			String[] sortedValues) {
+		long[] packed = new long[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			packed[i] = ((long) keys[i] << 32) | i;
+		}
+		Arrays.parallelSort(packed);
+
+		int distinct = 0;
+		for (int i = 0; i < packed.length; i++) {
+			int key = (int) (packed[i] >> 32);
+			if (distinct > 0 && sortedKeys[distinct - 1] == key) {
+				continue; // duplicate, first one wins
+			}
+			sortedKeys[distinct] = key;
+			if (values != null) {
+				sortedValues[distinct] = values[(int) packed[i]];
+			}
+			distinct++;
+		}
+		return distinct;
+	}
+
+	private static void checkBulkInput(int[] keys, String[] values) {
+		if (keys.length != values.length) {
+			throw new IllegalArgumentException("got " + keys.length + " keys but "
+					+ values.length + " values");
+		}
+	}
+
+	/**
+	 * @pre from < to
+	 * @return root of a tree holding keys[from..to). the middle item is the
+	 *         root, so sibling heights differ by at most 1, and setting
+	 *         rank = height keeps every rank difference at 1 or 2. the nodes
+	 *         are AugmentedNodes with their aggregates if augmentation is
+	 *         not null.
+	 */
+	private static WAVLNode buildRec(int[] keys, String[] values, int from, int to,
+			WAVLAugmentation augmentation) {
+		int mid = (from + to) >>> 1;
+		WAVLNode left = (from < mid) ? buildRec(keys, values, from, mid, augmentation) : EXT;
+		WAVLNode right = (mid + 1 < to) ? buildRec(keys, values, mid + 1, to, augmentation) : EXT;
+		return linkBuilt(keys[mid], values[mid], left, right, augmentation);
+	}
+
+	/**
+	 * @return new node with the given children, its rank and size set from
+	 *         theirs. writes the fields directly, the children are fresh.
+	 */
+	private static WAVLNode linkBuilt(int key, String value, WAVLNode left, WAVLNode right,
+			WAVLAugmentation augmentation) {
+		int size = 1 + left.getSubtreeSize() + right.getSubtreeSize();
+		int rank = 1 + Math.max(left.getRank(), right.getRank());
+		WAVLNode node = (augmentation != null) ? new AugmentedNode(key, value, size, rank, augmentation)
+				: new WAVLNode(key, value, size, rank);
+		node.left = left;
+		node.right = right;
+		if (left != EXT) {
+			left.parent = node;
+		}
+		if (right != EXT) {
+			right.parent = node;
+		}
+		if (augmentation != null) {
+			augmentation.update((AugmentedNode) node, left, right);
+		}
+		return node;
+	}
+
+	/**
+	 * parallel version of buildRec. ranges under BUILD_THRESHOLD items are
+	 * built sequentially. ForkJoinTask is Serializable, but tasks are never
+	 * serialized.
+	 */
+	@SuppressWarnings("serial")
+	private static class BuildTask extends RecursiveTask<WAVLNode> {
+		private static final int BUILD_THRESHOLD = 1 << 13;
+
+		private final int[] keys;
+		private final String[] values;
+		private final int from;
+		private final int to;
+
+		BuildTask(int[] keys, String[] values, int from, int to) {
+			this.keys = keys;
+			this.values = values;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected WAVLNode compute() {
+			if (to - from <= BUILD_THRESHOLD) {
+				return buildRec(keys, values, from, to, null);
+			}
+			int mid = (from + to) >>> 1;
+			BuildTask leftTask = new BuildTask(keys, values, from, mid);
+			leftTask.fork();
+			WAVLNode right = new BuildTask(keys, values, mid + 1, to).compute();
+			WAVLNode left = leftTask.join();
+			return linkBuilt(keys[mid], values[mid], left, right, null);
+		}
+	}
+
+	/**
+	 * public int insertAll(int[] keys, String[] values)
+	 *
+	 * inserts keys[j] with values[j] for every j. keys that are already in
+	 * the tree (or repeat in the batch) are skipped, like insert returning -1
+	 * for them. returns the total number of rebalancing operations.
+	 *
+	 * the batch is sorted once, and inserted in one recursive pass: every
+	 * node on a path to a new key is visited once for the whole batch, the
+	 * keys below it are divided among its subtrees, and the node is joined
+	 * back with its new subtrees, which also recomputes its size. a subtree
+	 * that gets several new keys into an empty spot is built directly.
+	 * O(m log(n/m + 1)) for m keys, instead of m full inserts.
+	 *
+	 * @pre keys.length == values.length
+	 */
+	public int insertAll(int[] keys, String[] values) {
+		checkBulkInput(keys, values);
+		int[] sortedKeys = new int[keys.length];
+		String[] sortedValues = new String[keys.length];
+		int distinct = sortDistinct(keys, values, sortedKeys, sortedValues);
+
+		restoreRanks();
+		int[] ops = new int[1];
+		WAVLNode newRoot = insertAllRec(detach(this.root), sortedKeys, sortedValues, 0, distinct, ops,
+				augmentation);
+		this.setRoot(newRoot);
+		return ops[0];
+	}
+
+	/**
+	 * @pre node is a detached subtree root or EXT
+	 * @return detached root of node's subtree with keys[from..to) added
+	 */
+	private static WAVLNode insertAllRec(WAVLNode node, int[] keys, String[] values,
+			int from, int to, int[] ops, WAVLAugmentation augmentation) {
+		if (from >= to) {
+			return node;
+		}
+		if (node == EXT) {
+			return buildRec(keys, values, from, to, augmentation);
+		}
+		int split = firstKeyAtLeast(keys, from, to, node.getKey());
+		int rightFrom = (split < to && keys[split] == node.getKey()) ? split + 1 : split;
+
+		WAVLNode left = insertAllRec(detach(node.left), keys, values, from, split, ops, augmentation);
+		WAVLNode right = insertAllRec(detach(node.right), keys, values, rightFrom, to, ops, augmentation);
+		return joinNodes(left, node, right, ops);
+	}
+
+	/**
+	 * public int deleteAll(int[] keys)
+	 *
+	 * deletes every key of keys that is in the tree; missing keys are
+	 * skipped. returns the total number of rebalancing operations. works
+	 * like insertAll: one recursive pass over the sorted batch, joining each
+	 * visited node back with its subtrees, or joining the two subtrees
+	 * directly if the node itself is deleted.
+	 */
+	public int deleteAll(int[] keys) {
+		int[] sortedKeys = new int[keys.length];
+		int distinct = sortDistinct(keys, null, sortedKeys, null);
+
+		restoreRanks();
+		int[] ops = new int[1];
+		WAVLNode newRoot = deleteAllRec(detach(this.root), sortedKeys, 0, distinct, ops);
+		this.setRoot(newRoot);
+		return ops[0];
+	}
+
+	/**
+	 * @pre node is a detached subtree root or EXT
+	 * @return detached root of node's subtree without keys[from..to)
+	 */
+	private static WAVLNode deleteAllRec(WAVLNode node, int[] keys, int from, int to, int[] ops) {
+		if (from >= to || node == EXT) {
+			return node;
+		}
+		int split = firstKeyAtLeast(keys, from, to, node.getKey());
+		boolean deleted = (split < to && keys[split] == node.getKey());
+		int rightFrom = deleted ? split + 1 : split;
+
+		WAVLNode left = deleteAllRec(detach(node.left), keys, from, split, ops);
+		WAVLNode right = deleteAllRec(detach(node.right), keys, rightFrom, to, ops);
+		if (deleted) {
+			return joinTwo(left, right, ops);
+		}
+		return joinNodes(left, node, right, ops);
+	}
+
+	/**
+	 * @return the first index in keys[from..to) holding a key >= k, or to
+	 */
+	private static int firstKeyAtLeast(int[] keys, int from, int to, int k) {
+		while (from < to) {
+			int mid = (from + to) >>> 1;
+			if (keys[mid] < k) {
+				from = mid + 1;
+			} else {
+				to = mid;
+			}
+		}
+		return from;
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of nodes in the tree.
+	 *
+	 */
+	public int size() {
+		return this.root.getSubtreeSize();
+	}
+
+	/**
+	 * @return $ret == null => tree is empty
+	 */
+	public WAVLNode getRoot() {
+		if (this.root == EXT) {
+			return null;
+		} else {
+			return this.root;
+		}
+	}
+
+	/**
+	 * public int select(int i)
+	 *
+	 * Returns the value of the i'th smallest key (return null if tree is empty)
+	 * Example 1: select(1) returns the value of the node with minimal key Example
+	 * 2: select(size()) returns the value of the node with maximal key Example 3:
+	 * select(2) returns the value 2nd smallest minimal node, i.e the value of the
+	 * node minimal node's successor
+	 */
+	public String select(int i) {
+		if (i < 1 || i > this.size()) {
+			return null;
+		}
+		
+		WAVLNode selectedNode = this.root;
+		int nodeIndex = selectedNode.left.getSubtreeSize() + 1;
+		while (nodeIndex != i) {
+			if (i > nodeIndex) {
+				selectedNode = selectedNode.right;
+				nodeIndex += (selectedNode.left.getSubtreeSize() + 1);
+			} else if (i < nodeIndex) {
+				selectedNode = selectedNode.left;
+				nodeIndex -= (selectedNode.right.getSubtreeSize() + 1);
+			}
+		}
+		return selectedNode.getValue();
+	}
+
+	/**
+	 * public int rank(int k)
+	 *
+	 * Returns the number of keys in the tree that are <= k, in O(log n).
+	 * the inverse of select: if k is in the tree, select(rank(k)) returns
+	 * its info.
+	 */
+	public int rank(int k) {
+		int count = 0;
+		WAVLNode node = this.root;
+		while (node != EXT) {
+			if (k < node.getKey()) {
+				node = node.left;
+			} else {
+				count += node.left.getSubtreeSize() + 1;
+				if (k == node.getKey()) {
+					break;
+				}
+				node = node.right;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * public int countInRange(int lo, int hi)
+	 *
+	 * Returns the number of keys in [lo, hi], in O(log n). descends once to
+	 * the highest node inside the range, then follows the search paths of lo
+	 * (in its left subtree) and hi (in its right subtree), adding whole
+	 * subtrees that lie inside the range.
+	 */
+	public int countInRange(int lo, int hi) {
+		if (lo > hi) {
+			return 0;
+		}
+		WAVLNode split = this.root;
+		while (split != EXT && (split.getKey() < lo || split.getKey() > hi)) {
+			split = (split.getKey() < lo) ? split.right : split.left;
+		}
+		if (split == EXT) {
+			return 0;
+		}
+
+		int count = 1;
+		// keys >= lo in the left subtree of split
+		WAVLNode node = split.left;
+		while (node != EXT) {
+			if (node.getKey() >= lo) {
+				count += node.right.getSubtreeSize() + 1;
+				node = node.left;
+			} else {
+				node = node.right;
+			}
+		}
+		// keys <= hi in the right subtree of split
+		node = split.right;
+		while (node != EXT) {
+			if (node.getKey() <= hi) {
+				count += node.left.getSubtreeSize() + 1;
+				node = node.right;
+			} else {
+				node = node.left;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * public void setAugmentation(WAVLAugmentation augmentation)
+	 *
+	 * keeps an associative aggregate (a LongAugmentation,
+	 * DoubleAugmentation or ObjectAugmentation) of every subtree in its
+	 * root, recomputed wherever the size is, so aggregateLong,
+	 * aggregateDouble and aggregate answer range queries in O(log n). null
+	 * removes the augmentation.
+	 *
+	 * the aggregates live in AugmentedNodes, so a plain tree pays nothing
+	 * for them. turning the augmentation on or off therefore replaces every
+	 * node (nodes returned by searchNode before are no longer in the tree);
+	 * switching between two augmentations keeps the nodes.
+	 *
+	 * @post every node's aggregate is computed, in O(n)
+	 */
+	public void setAugmentation(WAVLAugmentation augmentation) {
+		this.augmentation = augmentation;
+		this.pool = null; // may hold nodes of the other kind
+		this.poolSize = 0;
+		this.setRoot(augmentRec(this.root, augmentation));
+	}
+
+	/**
+	 * public WAVLAugmentation getAugmentation()
+	 */
+	public WAVLAugmentation getAugmentation() {
+		return augmentation;
+	}
+
+	/**
+	 * @return root of node's subtree with every node an AugmentedNode of
+	 *         augmentation, its aggregate computed bottom up, or a plain
+	 *         WAVLNode if augmentation is null. nodes of the right kind are
+	 *         kept, the others are replaced by copies.
+	 */
+	private static WAVLNode augmentRec(WAVLNode node, WAVLAugmentation augmentation) {
+		if (node == EXT) {
+			return EXT;
+		}
+		WAVLNode left = augmentRec(node.left, augmentation);
+		WAVLNode right = augmentRec(node.right, augmentation);
+		WAVLNode result = node;
+		if (augmentation != null && !(node instanceof AugmentedNode)) {
+			result = new AugmentedNode(node.key, node.value, node.size, node.rank, augmentation);
+		} else if (augmentation == null && node instanceof AugmentedNode) {
+			result = new WAVLNode(node.key, node.value, node.size, node.rank);
+		}
+		result.left = left;
+		result.right = right;
+		left.parent = (left != EXT) ? result : null;
+		right.parent = (right != EXT) ? result : null;
+		if (augmentation != null) {
+			AugmentedNode augmented = (AugmentedNode) result;
+			augmented.augmentation = augmentation;
+			augmented.aggregateObject = null;
+			augmentation.update(augmented, left, right);
+		}
+		return result;
+	}
+
+	/**
+	 * @return the augmentation of both t1 and t2, for a tree built from
+	 *         their nodes
+	 */
+	private static WAVLAugmentation commonAugmentation(WAVLTree t1, WAVLTree t2) {
+		if (t1.augmentation != t2.augmentation) {
+			throw new IllegalArgumentException("trees have different augmentations");
+		}
+		return t1.augmentation;
+	}
+
+	/**
+	 * public long aggregateLong(int lo, int hi)
+	 *
+	 * Returns the LongAugmentation aggregate of the items with keys in
+	 * [lo, hi], combined in key order, in O(log n): the nodes on the search
+	 * paths of lo and hi, and the stored aggregates of the subtrees between
+	 * them, as in countInRange. the identity if the range is empty.
+	 *
+	 * @pre getAugmentation() is a LongAugmentation
+	 */
+	public long aggregateLong(int lo, int hi) {
+		LongAugmentation aug = requireAugmentation(LongAugmentation.class);
+		WAVLNode split = rangeSplit(lo, hi);
+		if (split == EXT) {
+			return aug.identity();
+		}
+
+		// keys >= lo in the left subtree of split, collected right to left
+		long below = aug.identity();
+		WAVLNode node = split.left;
+		while (node != EXT) {
+			if (node.getKey() >= lo) {
+				long right = (node.right == EXT) ? aug.identity() : ((AugmentedNode) node.right).aggregate;
+				below = aug.combine(aug.combine(aug.lift(node.key, node.value), right), below);
+				node = node.left;
+			} else {
+				node = node.right;
+			}
+		}
+		// keys <= hi in the right subtree of split, collected left to right
+		long above = aug.identity();
+		node = split.right;
+		while (node != EXT) {
+			if (node.getKey() <= hi) {
+				long left = (node.left == EXT) ? aug.identity() : ((AugmentedNode) node.left).aggregate;
+				above = aug.combine(above, aug.combine(left, aug.lift(node.key, node.value)));
+				node = node.right;
+			} else {
+				node = node.left;
+			}
+		}
+		return aug.combine(aug.combine(below, aug.lift(split.key, split.value)), above);
+	}
+
+	/**
+	 * public double aggregateDouble(int lo, int hi)
+	 *
+	 * Returns the DoubleAugmentation aggregate of the items with keys in
+	 * [lo, hi], as aggregateLong.
+	 *
+	 * @pre getAugmentation() is a DoubleAugmentation
+	 */
+	public double aggregateDouble(int lo, int hi) {
+		DoubleAugmentation aug = requireAugmentation(DoubleAugmentation.class);
+		WAVLNode split = rangeSplit(lo, hi);
+		if (split == EXT) {
+			return aug.identity();
+		}
+
+		double below = aug.identity();
+		WAVLNode node = split.left;
+		while (node != EXT) {
+			if (node.getKey() >= lo) {
+				double right = (node.right == EXT) ? aug.identity() : Double.longBitsToDouble(((AugmentedNode) node.right).aggregate);
+				below = aug.combine(aug.combine(aug.lift(node.key, node.value), right), below);
+				node = node.left;
+			} else {
+				node = node.right;
+			}
+		}
+		double above = aug.identity();
+		node = split.right;
+		while (node != EXT) {
+			if (node.getKey() <= hi) {
+				double left = (node.left == EXT) ? aug.identity() : Double.longBitsToDouble(((AugmentedNode) node.left).aggregate);
+				above = aug.combine(above, aug.combine(left, aug.lift(node.key, node.value)));
+				node = node.right;
+			} else {
+				node = node.left;
+			}
+		}
+		return aug.combine(aug.combine(below, aug.lift(split.key, split.value)), above);
+	}
+
+	/**
+	 * public <A> A aggregate(int lo, int hi)
+	 *
+	 * Returns the ObjectAugmentation aggregate of the items with keys in
+	 * [lo, hi], as aggregateLong.
+	 *
+	 * @pre getAugmentation() is an ObjectAugmentation<A>
+	 */
+	@SuppressWarnings("unchecked")
+	public <A> A aggregate(int lo, int hi) {
+		ObjectAugmentation<A> aug = requireAugmentation(ObjectAugmentation.class);
+		WAVLNode split = rangeSplit(lo, hi);
+		if (split == EXT) {
+			return aug.identity();
+		}
+
+		A below = aug.identity();
+		WAVLNode node = split.left;
+		while (node != EXT) {
+			if (node.getKey() >= lo) {
+				A right = (node.right == EXT) ? aug.identity() : (A) ((AugmentedNode) node.right).aggregateObject;
+				below = aug.combine(aug.combine(aug.lift(node.key, node.value), right), below);
+				node = node.left;
+			} else {
+				node = node.right;
+			}
+		}
+		A above = aug.identity();
+		node = split.right;
+		while (node != EXT) {
+			if (node.getKey() <= hi) {
+				A left = (node.left == EXT) ? aug.identity() : (A) ((AugmentedNode) node.left).aggregateObject;
+				above = aug.combine(above, aug.combine(left, aug.lift(node.key, node.value)));
+				node = node.right;
+			} else {
+				node = node.left;
+			}
+		}
+		return aug.combine(aug.combine(below, aug.lift(split.key, split.value)), above);
+	}
+
+	private <T extends WAVLAugmentation> T requireAugmentation(Class<T> kind) {
+		if (!kind.isInstance(augmentation)) {
+			throw new IllegalStateException("tree is not augmented with a " + kind.getSimpleName());
+		}
+		return kind.cast(augmentation);
+	}
+
+	/**
+	 * @return the highest node with a key in [lo, hi], or EXT if there is
+	 *         none
+	 */
+	private WAVLNode rangeSplit(int lo, int hi) {
+		if (lo > hi) {
+			return EXT;
+		}
+		WAVLNode split = this.root;
+		while (split != EXT && (split.getKey() < lo || split.getKey() > hi)) {
+			split = (split.getKey() < lo) ? split.right : split.left;
+		}
+		return split;
+	}
+
+	/**
+	 * public String[] selectMany(int[] ranks)
+	 *
+	 * Returns select(ranks[j]) at index j, for every j. the ranks are sorted
+	 * and resolved in one shared descent, which splits the sorted ranks at
+	 * every node, so nodes on common paths (e.g. the root for p50/p90/p99)
+	 * are visited once. out of range ranks give null, like select.
+	 */
+	public String[] selectMany(int[] ranks) {
+		String[] result = new String[ranks.length];
+		// (rank, index) pairs packed in a long, sorted by rank
+		long[] order = new long[ranks.length];
+		for (int j = 0; j < ranks.length; j++) {
+			order[j] = ((long) ranks[j] << 32) | j;
+		}
+		Arrays.sort(order);
+		selectManyRec(this.root, 0, order, 0, order.length, result);
+		return result;
+	}
+
+	/**
+	 * resolves the sorted ranks in order[from..to) in the subtree of node,
+	 * where offset keys of the tree are smaller than every key under node.
+	 */
+	private static void selectManyRec(WAVLNode node, int offset, long[] order,
+			int from, int to, String[] result) {
+		if (from >= to || node == EXT) {
+			return; // ranks outside the tree stay null
+		}
+		int nodeIndex = offset + node.left.getSubtreeSize() + 1;
+
+		int mid = firstRankAtLeast(order, from, to, nodeIndex);
+		int end = firstRankAtLeast(order, mid, to, nodeIndex + 1);
+		for (int j = mid; j < end; j++) {
+			result[(int) order[j]] = node.getValue();
+		}
+		selectManyRec(node.left, offset, order, from, mid, result);
+		selectManyRec(node.right, nodeIndex, order, end, to, result);
+	}
+
+	/**
+	 * @return the first index in order[from..to) whose rank is >= rank, or to
+	 */
+	private static int firstRankAtLeast(long[] order, int from, int to, int rank) {
+		while (from < to) {
+			int mid = (from + to) >>> 1;
+			if ((int) (order[mid] >> 32) < rank) {
+				from = mid + 1;
+			} else {
+				to = mid;
+			}
+		}
+		return from;
+	}
+
+	/**
+	 * public RangeCursor range(int lo, int hi)
+	 *
+	 * Returns a cursor over the keys in [lo, hi), in ascending order. the
+	 * start is found with one search, and every step is a successor walk,
+	 * so reading j keys costs O(log n + j) and allocates nothing per step.
+	 * the tree must not be modified while the cursor is in use.
+	 */
+	public RangeCursor range(int lo, int hi) {
+		WAVLNode start = null;
+		if (!empty() && lo < hi) {
+			start = searchNode(lo);
+			if (start.getKey() < lo) {
+				start = start.successor();
+				if (start.getKey() < lo) { // no successor, every key < lo
+					start = null;
+				}
+			}
+		}
+		return new RangeCursor(start, lo, hi, false);
+	}
+
+	/**
+	 * public RangeCursor descendingRange(int lo, int hi)
+	 *
+	 * Returns a cursor over the keys in [lo, hi), in descending order, walking
+	 * with predecessor(). same costs as range(lo, hi).
+	 */
+	public RangeCursor descendingRange(int lo, int hi) {
+		WAVLNode start = null;
+		if (!empty() && lo < hi) {
+			start = searchNode(hi);
+			if (start.getKey() >= hi) {
+				start = start.predecessor();
+				if (start.getKey() >= hi) { // no predecessor, every key >= hi
+					start = null;
+				}
+			}
+		}
+		return new RangeCursor(start, lo, hi, true);
+	}
+
+	/**
+	 * public static class RangeCursor
+	 *
+	 * a primitive cursor over a key range of a WAVLTree. usage:
+	 *   for (RangeCursor c = tree.range(lo, hi); c.hasNext();) {
+	 *       int key = c.nextKey();
+	 *       String info = c.value();
+	 *   }
+	 */
+	public static class RangeCursor {
+		private final int lo;
+		private final int hi;
+		private final boolean descending;
+		private WAVLNode next; // null when exhausted
+		private WAVLNode current;
+
+		private RangeCursor(WAVLNode start, int lo, int hi, boolean descending) {
+			this.lo = lo;
+			this.hi = hi;
+			this.descending = descending;
+			this.next = inRange(start) ? start : null;
+		}
+
+		private boolean inRange(WAVLNode node) {
+			return node != null && node.getKey() >= lo && node.getKey() < hi;
+		}
+
+		/**
+		 * @return true iff there is another key in the range
+		 */
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		/**
+		 * @pre hasNext()
+		 * @return the next key in the range, and moves the cursor to it
+		 */
+		public int nextKey() {
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
+			current = next;
+			WAVLNode step = descending ? current.predecessor() : current.successor();
+			// successor/predecessor return their node itself at the end of the tree
+			next = (step != current && inRange(step)) ? step : null;
+			return current.getKey();
+		}
+
+		/**
+		 * @pre nextKey() was called
+		 * @return the info of the key last returned by nextKey()
+		 */
+		public String value() {
+			return current.getValue();
+		}
+	}
+
+	/**
+	 * public FrozenWAVLTree freeze()
+	 *
+	 * Returns an immutable snapshot of the tree in a cache friendly array
+	 * layout, for read mostly use, in O(n). this tree stays mutable; later
+	 * changes are not seen by the snapshot, so freeze again to refresh it.
+	 */
+	public FrozenWAVLTree freeze() {
+		return new FrozenWAVLTree(keysToArray(), infoToArray());
+	}
+
+	/**
+	 * public IntStream keys()
+	 *
+	 * Returns a stream of all keys, in ascending order. its spliterator is
+	 * SIZED and SUBSIZED: every split halves a range of in-order positions,
+	 * whose sizes are exact thanks to the subtree sizes, so parallel streams
+	 * get balanced work without copying the tree into an array. the tree
+	 * must not be modified while the stream is in use.
+	 */
+	public IntStream keys() {
+		return StreamSupport.intStream(new KeySpliterator(this.root, 0, size()), false);
+	}
+
+	/**
+	 * public IntStream keys(int lo, int hi)
+	 *
+	 * Returns a stream of the keys in [lo, hi], in ascending order. splits
+	 * like keys().
+	 */
+	public IntStream keys(int lo, int hi) {
+		return StreamSupport.intStream(new KeySpliterator(this.root, countBelow(lo), rankUpTo(lo, hi)), false);
+	}
+
+	/**
+	 * public Stream<Entry> entries()
+	 *
+	 * Returns a stream of all (key, info) pairs, in key order. splits like
+	 * keys().
+	 */
+	public Stream<Entry> entries() {
+		return StreamSupport.stream(new EntrySpliterator(this.root, 0, size()), false);
+	}
+
+	/**
+	 * public Stream<Entry> entries(int lo, int hi)
+	 *
+	 * Returns a stream of the (key, info) pairs with keys in [lo, hi], in key
+	 * order. splits like keys().
+	 */
+	public Stream<Entry> entries(int lo, int hi) {
+		return StreamSupport.stream(new EntrySpliterator(this.root, countBelow(lo), rankUpTo(lo, hi)), false);
+	}
+
+	/**
+	 * @return number of keys < k
+	 */
+	private int countBelow(int k) {
+		return (k == Integer.MIN_VALUE) ? 0 : rank(k - 1);
+	}
+
+	/**
+	 * @return end position (exclusive) of the keys in [lo, hi], which is
+	 *         never below their start position countBelow(lo)
+	 */
+	private int rankUpTo(int lo, int hi) {
+		return (lo > hi) ? countBelow(lo) : rank(hi);
+	}
+
+	/**
+	 * public static class Entry
 	 *
+	 * a (key, info) pair of a WAVLTree, copied out of its node
 	 */
-	public int size() {
-		return this.root.getSubtreeSize();
+	public static class Entry {
+		private final int key;
+		private final String value;
+
+		public Entry(int key, String value) {
+			this.key = key;
+			this.value = value;
+		}
+
+		public int getKey() {
+			return key;
+		}
+
+		public String getValue() {
+			return value;
+		}
+
+		public String toString() {
+			return key + "=" + value;
+		}
 	}
 
 	/**
-	 * @return $ret == null => tree is empty
+	 * the nodes at in-order positions [from, to) (0 based) under root. the
+	 * node at from is found by a select descent when first needed, and the
+	 * rest by successor walks. trySplit hands the lower half of the
+	 * positions to a new spliterator.
 	 */
-	public WAVLNode getRoot() {
-		if (this.root == EXT) {
-			return null;
-		} else {
-			return this.root;
+	private abstract static class PositionSpliterator {
+		final WAVLNode root;
+		int from;
+		final int to;
+		private WAVLNode next; // node at from, null if not located yet
+
+		PositionSpliterator(WAVLNode root, int from, int to) {
+			this.root = root;
+			this.from = from;
+			this.to = to;
+		}
+
+		/**
+		 * @return the node at from and moves past it, or null at the end
+		 */
+		final WAVLNode advance() {
+			if (from >= to) {
+				return null;
+			}
+			WAVLNode node = (next != null) ? next : nodeAt(root, from);
+			from++;
+			next = (from < to) ? node.successor() : null;
+			return node;
+		}
+
+		/**
+		 * @return the middle position to split at, or -1 if too small
+		 */
+		final int splitPosition() {
+			if (to - from < 2) {
+				return -1;
+			}
+			int mid = (from + to) >>> 1;
+			from = mid;
+			next = null;
+			return mid;
+		}
+
+		public long estimateSize() {
+			return to - from;
+		}
+
+		public int characteristics() {
+			return Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.SIZED | Spliterator.SUBSIZED
+					| Spliterator.NONNULL;
 		}
 	}
 
 	/**
-	 * public int select(int i)
-	 *
-	 * Returns the value of the i'th smallest key (return null if tree is empty)
-	 * Example 1: select(1) returns the value of the node with minimal key Example
-	 * 2: select(size()) returns the value of the node with maximal key Example 3:
-	 * select(2) returns the value 2nd smallest minimal node, i.e the value of the
-	 * node minimal node's successor
+	 * @pre 0 <= position < root.size
+	 * @return the node at in-order position position (0 based) under root
 	 */
-	public String select(int i) {
-		if (i > this.getRoot().getSubtreeSize()) {
-			return null;
+	private static WAVLNode nodeAt(WAVLNode root, int position) {
+		WAVLNode node = root;
+		while (true) {
+			int leftSize = node.left.getSubtreeSize();
+			if (position < leftSize) {
+				node = node.left;
+			} else if (position == leftSize) {
+				return node;
+			} else {
+				position -= leftSize + 1;
+				node = node.right;
+			}
 		}
-		
-		WAVLNode selectedNode = this.getRoot();
-		int nodeIndex = selectedNode.getLeft().getSubtreeSize() + 1;
-		while (nodeIndex != i) {
-			if (i > nodeIndex) {
-				selectedNode = selectedNode.getRight();
-				nodeIndex += (selectedNode.getLeft().getSubtreeSize() + 1);
-			} else if (i < nodeIndex) {
-				selectedNode = selectedNode.getLeft();
-				nodeIndex -= (selectedNode.getRight().getSubtreeSize() + 1);
+	}
+
+	private static final class KeySpliterator extends PositionSpliterator implements Spliterator.OfInt {
+
+		KeySpliterator(WAVLNode root, int from, int to) {
+			super(root, from, to);
+		}
+
+		public boolean tryAdvance(IntConsumer action) {
+			WAVLNode node = advance();
+			if (node == null) {
+				return false;
 			}
+			action.accept(node.getKey());
+			return true;
+		}
+
+		public void forEachRemaining(IntConsumer action) {
+			for (WAVLNode node = advance(); node != null; node = advance()) {
+				action.accept(node.getKey());
+			}
+		}
+
+		public KeySpliterator trySplit() {
+			int start = from;
+			int mid = splitPosition();
+			return (mid < 0) ? null : new KeySpliterator(root, start, mid);
+		}
+
+		public int characteristics() {
+			return super.characteristics() | Spliterator.SORTED;
+		}
+
+		public Comparator<? super Integer> getComparator() {
+			return null; // natural order
+		}
+	}
+
+	private static final class EntrySpliterator extends PositionSpliterator implements Spliterator<Entry> {
+
+		EntrySpliterator(WAVLNode root, int from, int to) {
+			super(root, from, to);
+		}
+
+		public boolean tryAdvance(Consumer<? super Entry> action) {
+			WAVLNode node = advance();
+			if (node == null) {
+				return false;
+			}
+			action.accept(new Entry(node.getKey(), node.getValue()));
+			return true;
+		}
+
+		public EntrySpliterator trySplit() {
+			int start = from;
+			int mid = splitPosition();
+			return (mid < 0) ? null : new EntrySpliterator(root, start, mid);
 		}
-		return selectedNode.getValue();
 	}
 	
 	/**
@@ -497,13 +2146,13 @@ public class WAVLTree {
 		WAVLNode tempPar = rotNode.getParent();
 		
 		if (rotNode.isRight()) { // rotNode is a right child
-			WAVLNode tempChild = rotNode.getLeft();
+			WAVLNode tempChild = rotNode.left; // may be EXT, which getLeft() hides
 			rotNode.setParent(rotNode.getParent().getParent());
 			rotNode.setLeft(tempPar);
 			rotNode.getLeft().setRight(tempChild);
 			
 		} else { // rotNode is a left child
-			WAVLNode tempChild = rotNode.getRight();
+			WAVLNode tempChild = rotNode.right;
 			rotNode.setParent(rotNode.getParent().getParent());
 			rotNode.setRight(tempPar);
 			rotNode.getRight().setLeft(tempChild);
@@ -542,7 +2191,420 @@ public class WAVLTree {
 		rotate(node.getLeft().getRight());
 		rotate(node.getLeft());
 	}
-	
+
+	/**
+	 * public static WAVLTree join(WAVLTree t1, int k, String i, WAVLTree t2)
+	 *
+	 * concatenates t1, a new item (k, i) and t2 into one tree, in
+	 * O(|t1.rank - t2.rank| + 1) time. the nodes of t1 and t2 are moved into
+	 * the returned tree.
+	 *
+	 * @pre every key in t1 < k < every key in t2
+	 * @pre t1 and t2 have the same augmentation
+	 * @post t1.empty() && t2.empty()
+	 */
+	public static WAVLTree join(WAVLTree t1, int k, String i, WAVLTree t2) {
+		WAVLTree joined = new WAVLTree();
+		joined.augmentation = commonAugmentation(t1, t2);
+		t1.restoreRanks();
+		t2.restoreRanks();
+		WAVLNode leftRoot = t1.root;
+		WAVLNode rightRoot = t2.root;
+		t1.setRoot(EXT);
+		t2.setRoot(EXT);
+
+		joined.setRoot(joinNodes(leftRoot, joined.newNode(k, i), rightRoot));
+		return joined;
+	}
+
+	/**
+	 * public static WAVLTree join(WAVLTree t1, WAVLTree t2)
+	 *
+	 * concatenates t1 and t2 into one tree, in O(log n) time: the maximum of
+	 * t1 is cut off and used as the middle item of a join. the nodes of t1
+	 * and t2 are moved into the returned tree.
+	 *
+	 * @pre every key in t1 < every key in t2
+	 * @pre t1 and t2 have the same augmentation
+	 * @post t1.empty() && t2.empty()
+	 */
+	public static WAVLTree join(WAVLTree t1, WAVLTree t2) {
+		WAVLTree joined = new WAVLTree();
+		joined.augmentation = commonAugmentation(t1, t2);
+		t1.restoreRanks();
+		t2.restoreRanks();
+		WAVLNode leftRoot = t1.root;
+		WAVLNode rightRoot = t2.root;
+		t1.setRoot(EXT);
+		t2.setRoot(EXT);
+
+		joined.setRoot(joinTwo(leftRoot, rightRoot));
+		return joined;
+	}
+
+	/**
+	 * public WAVLTree[] split(int k)
+	 *
+	 * splits the tree by key k in O(log n) time. returns two trees: [0] holds
+	 * every key < k and [1] holds every key >= k. the nodes of this tree are
+	 * moved into the returned trees.
+	 *
+	 * @post this.empty()
+	 */
+	public WAVLTree[] split(int k) {
+		restoreRanks();
+		WAVLNode[] parts = splitRec(this.root, k);
+		this.setRoot(EXT);
+		if (parts[1] != null) { // k itself goes to the right part, as its minimum
+			parts[2] = joinNodes(EXT, parts[1], parts[2]);
+		}
+
+		WAVLTree smaller = new WAVLTree();
+		WAVLTree greaterOrEqual = new WAVLTree();
+		smaller.augmentation = augmentation;
+		greaterOrEqual.augmentation = augmentation;
+		smaller.setRoot(parts[0]);
+		greaterOrEqual.setRoot(parts[2]);
+		return new WAVLTree[] { smaller, greaterOrEqual };
+	}
+
+	/**
+	 * @pre node is a detached subtree root (parent == null) or EXT
+	 * @return {root of keys < k, the detached node with key k or null,
+	 *         root of keys > k}
+	 *
+	 * every level joins the part that is cut off with the node itself, and
+	 * the ranks of consecutive joins telescope, so the total is O(log n).
+	 */
+	private static WAVLNode[] splitRec(WAVLNode node, int k) {
+		if (node == EXT) {
+			return new WAVLNode[] { EXT, null, EXT };
+		}
+		WAVLNode left = detach(node.left);
+		WAVLNode right = detach(node.right);
+
+		if (k == node.getKey()) {
+			node.left = EXT;
+			node.right = EXT;
+			return new WAVLNode[] { left, node, right };
+		} else if (k < node.getKey()) {
+			WAVLNode[] parts = splitRec(left, k);
+			parts[2] = joinNodes(parts[2], node, right);
+			return parts;
+		} else {
+			WAVLNode[] parts = splitRec(right, k);
+			parts[0] = joinNodes(left, node, parts[0]);
+			return parts;
+		}
+	}
+
+	/**
+	 * @return node, with no parent (unless node is EXT)
+	 */
+	private static WAVLNode detach(WAVLNode node) {
+		if (node != EXT) {
+			node.parent = null;
+		}
+		return node;
+	}
+
+	/**
+	 * @pre left and right are detached subtree roots or EXT
+	 * @pre every key under left < mid.key < every key under right
+	 * @return root of a valid WAVL tree holding left, mid and right
+	 *
+	 * if the ranks are close, mid becomes the root. otherwise mid is hung
+	 * on the spine of the higher tree, at the first node c whose rank is at
+	 * most (lower rank + 1), with rank c.rank + 1. this may make mid a
+	 * 0-child, which is fixed exactly like an insertion (joinRebalance).
+	 */
+	private static WAVLNode joinNodes(WAVLNode left, WAVLNode mid, WAVLNode right) {
+		return joinNodes(left, mid, right, null);
+	}
+
+	/**
+	 * joinNodes, adding the number of promotions and rotations it needed to
+	 * ops[0] (if ops != null), counted the same way as insert counts them
+	 */
+	private static WAVLNode joinNodes(WAVLNode left, WAVLNode mid, WAVLNode right, int[] ops) {
+		mid.parent = null;
+		int leftRank = left.getRank();
+		int rightRank = right.getRank();
+
+		if (Math.abs(leftRank - rightRank) <= 1) {
+			mid.left = EXT;
+			mid.right = EXT;
+			mid.setLeft(left);
+			mid.setRight(right);
+			mid.setRank(Math.max(leftRank, rightRank) + 1);
+			mid.updateSize();
+			return mid;
+		}
+
+		WAVLNode spine;
+		WAVLNode top;
+		if (leftRank > rightRank) { // walk down the right spine of left
+			top = left;
+			spine = left;
+			WAVLNode spineParent = null; // set on the first step, top.rank is high enough
+			while (spine.getRank() > rightRank + 1) {
+				spineParent = spine;
+				spine = spine.right;
+			}
+			mid.left = EXT;
+			mid.right = EXT;
+			mid.setLeft(spine);
+			mid.setRight(right);
+			spineParent.setRight(mid);
+		} else { // walk down the left spine of right
+			top = right;
+			spine = right;
+			WAVLNode spineParent = null;
+			while (spine.getRank() > leftRank + 1) {
+				spineParent = spine;
+				spine = spine.left;
+			}
+			mid.left = EXT;
+			mid.right = EXT;
+			mid.setRight(spine);
+			mid.setLeft(left);
+			spineParent.setLeft(mid);
+		}
+		mid.setRank(spine.getRank() + 1);
+		updateSizeToRoot(mid);
+
+		WAVLNode fixedTop = joinRebalance(mid, ops);
+		return (fixedTop != null) ? fixedTop : top;
+	}
+
+	/**
+	 * bottom up fix after joinNodes hung node on a spine. sizes are already
+	 * correct, and are kept so by updating the rotated nodes locally.
+	 *
+	 * @return the new root, if a rotation replaced it, else null
+	 */
+	private static WAVLNode joinRebalance(WAVLNode node, int[] ops) {
+		int count = 0;
+		WAVLNode parent = node.getParent();
+
+		// (0,1) parent - promote and check its parent
+		while (parent != null && parent.getRank() == node.getRank()) {
+			WAVLNode sibling = (parent.left == node) ? parent.right : parent.left;
+			if (parent.getRank() - sibling.getRank() != 1) {
+				break;
+			}
+			parent.setRank(parent.getRank() + 1);
+			count++;
+			node = parent;
+			parent = node.getParent();
+		}
+
+		if (parent == null || parent.getRank() != node.getRank()) {
+			addOps(ops, count);
+			return null; // valid
+		}
+
+		// (0,2) parent - single or double rotation, terminal
+		boolean nodeIsLeft = (parent.left == node);
+		WAVLNode inner = nodeIsLeft ? node.right : node.left;
+		WAVLNode newTop;
+		if (node.getRank() - inner.getRank() == 2) {
+			if (nodeIsLeft) {
+				rotateLeftChild(parent);
+			} else {
+				rotateRightChild(parent);
+			}
+			parent.setRank(parent.getRank() - 1);
+			parent.updateSize();
+			node.updateSize();
+			count += 2;
+			newTop = node;
+		} else {
+			if (nodeIsLeft) {
+				doubleRotateLeftChild(parent);
+			} else {
+				doubleRotateRightChild(parent);
+			}
+			inner.setRank(inner.getRank() + 1);
+			node.setRank(node.getRank() - 1);
+			parent.setRank(parent.getRank() - 1);
+			parent.updateSize();
+			node.updateSize();
+			inner.updateSize();
+			count += 5;
+			newTop = inner;
+		}
+		addOps(ops, count);
+		return (newTop.getParent() == null) ? newTop : null;
+	}
+
+	private static void addOps(int[] ops, int count) {
+		if (ops != null) {
+			ops[0] += count;
+		}
+	}
+
+	/**
+	 * public static WAVLTree union(WAVLTree t1, WAVLTree t2)
+	 *
+	 * returns a tree holding every key of t1 and t2. if a key is in both,
+	 * the value from t1 is kept. O(m log(n/m + 1)) work for m <= n, run in
+	 * parallel on the common ForkJoinPool (Blelloch, Ferizovic & Sun '16).
+	 * the nodes of t1 and t2 are moved into the returned tree.
+	 *
+	 * @post t1.empty() && t2.empty()
+	 */
+	public static WAVLTree union(WAVLTree t1, WAVLTree t2) {
+		return setOperation(SetOp.UNION, t1, t2);
+	}
+
+	/**
+	 * public static WAVLTree intersection(WAVLTree t1, WAVLTree t2)
+	 *
+	 * returns a tree holding the keys that are in both t1 and t2, with their
+	 * values from t1. same cost and ownership rules as union.
+	 *
+	 * @post t1.empty() && t2.empty()
+	 */
+	public static WAVLTree intersection(WAVLTree t1, WAVLTree t2) {
+		return setOperation(SetOp.INTERSECTION, t1, t2);
+	}
+
+	/**
+	 * public static WAVLTree difference(WAVLTree t1, WAVLTree t2)
+	 *
+	 * returns a tree holding the items of t1 whose key is not in t2. same
+	 * cost and ownership rules as union.
+	 *
+	 * @post t1.empty() && t2.empty()
+	 */
+	public static WAVLTree difference(WAVLTree t1, WAVLTree t2) {
+		return setOperation(SetOp.DIFFERENCE, t1, t2);
+	}
+
+	private enum SetOp {
+		UNION, INTERSECTION, DIFFERENCE
+	}
+
+	private static WAVLTree setOperation(SetOp op, WAVLTree t1, WAVLTree t2) {
+		WAVLTree result = new WAVLTree();
+		result.augmentation = commonAugmentation(t1, t2);
+		t1.restoreRanks();
+		t2.restoreRanks();
+		WAVLNode root1 = t1.root;
+		WAVLNode root2 = t2.root;
+		t1.setRoot(EXT);
+		t2.setRoot(EXT);
+
+		result.setRoot(ForkJoinPool.commonPool().invoke(new SetOpTask(op, root1, root2)));
+		return result;
+	}
+
+	/**
+	 * recursive set operation on two detached subtrees. one tree is split
+	 * by the root key of the other, the two halves are solved in parallel
+	 * (sequentially under SET_OP_THRESHOLD items) and joined back.
+	 * the recursive calls work on disjoint nodes, so they need no locking.
+	 * never serialized, like BuildTask.
+	 */
+	@SuppressWarnings("serial")
+	private static class SetOpTask extends RecursiveTask<WAVLNode> {
+		private static final int SET_OP_THRESHOLD = 1 << 12;
+
+		private final SetOp op;
+		private final WAVLNode first;
+		private final WAVLNode second;
+
+		SetOpTask(SetOp op, WAVLNode first, WAVLNode second) {
+			this.op = op;
+			this.first = first;
+			this.second = second;
+		}
+
+		@Override
+		protected WAVLNode compute() {
+			if (first == EXT) {
+				return (op == SetOp.UNION) ? second : EXT;
+			}
+			if (second == EXT) {
+				return (op == SetOp.INTERSECTION) ? EXT : first;
+			}
+
+			boolean parallel = first.getSubtreeSize() + second.getSubtreeSize() > SET_OP_THRESHOLD;
+
+			// union and intersection pivot on first, difference on second
+			WAVLNode pivot = (op == SetOp.DIFFERENCE) ? second : first;
+			WAVLNode other = (op == SetOp.DIFFERENCE) ? first : second;
+			WAVLNode pivotLeft = detach(pivot.left);
+			WAVLNode pivotRight = detach(pivot.right);
+			WAVLNode[] parts = splitRec(other, pivot.getKey());
+
+			SetOpTask leftTask;
+			SetOpTask rightTask;
+			if (op == SetOp.DIFFERENCE) {
+				leftTask = new SetOpTask(op, parts[0], pivotLeft);
+				rightTask = new SetOpTask(op, parts[2], pivotRight);
+			} else {
+				leftTask = new SetOpTask(op, pivotLeft, parts[0]);
+				rightTask = new SetOpTask(op, pivotRight, parts[2]);
+			}
+
+			WAVLNode left;
+			WAVLNode right;
+			if (parallel) {
+				leftTask.fork();
+				right = rightTask.compute();
+				left = leftTask.join();
+			} else {
+				left = leftTask.compute();
+				right = rightTask.compute();
+			}
+
+			boolean keepPivot = (op == SetOp.UNION)
+					|| (op == SetOp.INTERSECTION && parts[1] != null);
+			if (keepPivot) {
+				return joinNodes(left, pivot, right);
+			}
+			return joinTwo(left, right);
+		}
+	}
+
+	/**
+	 * @pre left and right are detached subtree roots or EXT
+	 * @pre every key under left < every key under right
+	 * @return root of a valid WAVL tree holding both
+	 */
+	private static WAVLNode joinTwo(WAVLNode left, WAVLNode right) {
+		return joinTwo(left, right, null);
+	}
+
+	/**
+	 * joinTwo, counting promotions and rotations into ops (see joinNodes)
+	 */
+	private static WAVLNode joinTwo(WAVLNode left, WAVLNode right, int[] ops) {
+		if (left == EXT) {
+			return right;
+		}
+		WAVLNode[] parts = splitLast(left, ops);
+		return joinNodes(parts[0], parts[1], right, ops);
+	}
+
+	/**
+	 * @pre node is a detached subtree root, node != EXT
+	 * @return {root of node's tree without its maximum, detached maximum}
+	 */
+	private static WAVLNode[] splitLast(WAVLNode node, int[] ops) {
+		WAVLNode left = detach(node.left);
+		WAVLNode right = detach(node.right);
+		if (right == EXT) {
+			node.left = EXT;
+			return new WAVLNode[] { left, node };
+		}
+		WAVLNode[] parts = splitLast(right, ops);
+		parts[0] = joinNodes(left, node, parts[0], ops);
+		return parts;
+	}
+
 	
 	/**
 	 * public class WAVLNode
@@ -622,20 +2684,22 @@ public class WAVLTree {
 		 */
 		public void insertUpdateCase1() {
 			this.rank++; // increment rank
-			this.size++; // increment size
+			this.updateSize(); // the child below is up to date
 		}
 
 		/**
 		 * @return true iff node is an insertion case 2 (0,2)/(2,0) with (1,2)
-		 *         left child/(2,1) right child
+		 *         left child/(2,1) right child. a difference of 2 is tested as
+		 *         >= 2, the same in a WAVL tree, so relaxed deletes (which
+		 *         leave larger differences) keep insertion working
 		 */
 		public boolean insertIsCase2() {
-			return (this.rankDiffLeft() == 0 && this.rankDiffRight() == 2 
+			return (this.rankDiffLeft() == 0 && this.rankDiffRight() >= 2 
 					&& this.getLeft().rankDiffLeft() == 1 //left right child, cannot be EXT
-					&& this.getLeft().rankDiffRight() == 2)
-					|| (this.rankDiffLeft() == 2 && this.rankDiffRight() == 0 
-					&& this.getRight().rankDiffLeft() == 2
-							&& this.getLeft().rankDiffRight() == 1);
+					&& this.getLeft().rankDiffRight() >= 2)
+					|| (this.rankDiffLeft() >= 2 && this.rankDiffRight() == 0
+					&& this.getRight().rankDiffLeft() >= 2
+							&& this.getRight().rankDiffRight() == 1);
 		}
 
 		public void insertUpdateCase2() {
@@ -653,12 +2717,12 @@ public class WAVLTree {
 		 *         left child/(1,2) right child
 		 */
 		public boolean insertIsCase3() {
-			return (this.rankDiffLeft() == 0 && this.rankDiffRight() == 2 
-					&& this.getLeft().rankDiffLeft() == 2
-					&& this.getRight().rankDiffRight() == 1) //left or right child, CANNOT be EXT
-					|| (this.rankDiffLeft() == 2 && this.rankDiffRight() == 0 
-					&& this.getLeft().rankDiffLeft() == 1
-							&& this.getRight().rankDiffRight() == 2);
+			return (this.rankDiffLeft() == 0 && this.rankDiffRight() >= 2 
+					&& this.getLeft().rankDiffLeft() >= 2
+					&& this.getLeft().rankDiffRight() == 1) //left or right child, CANNOT be EXT
+					|| (this.rankDiffLeft() >= 2 && this.rankDiffRight() == 0
+					&& this.getRight().rankDiffLeft() == 1
+							&& this.getRight().rankDiffRight() >= 2);
 		}
 
 		public void insertUpdateCase3() {
@@ -698,8 +2762,8 @@ public class WAVLTree {
 		}
 
 		/**
-		 * updates size of single node (no iteration). does nothing if node is
-		 * EXT.
+		 * updates size of single node (no iteration), and its aggregate if it
+		 * is an AugmentedNode. does nothing if node is EXT.
 		 */
 		public void updateSize() {
 			if (this != EXT) {
@@ -783,12 +2847,12 @@ public class WAVLTree {
 		 *          right child, or (1,3) node with (2,2) left child
 		 */
 		public boolean deleteIsCase2() {
-			return (this.rankDiffLeft() == 3 & this.rankDiffRight() == 1 
-					& this.getRight().rankDiffLeft() == 2
-					& this.getRight().rankDiffRight() == 2)
-					|| (this.rankDiffRight() == 3 & this.rankDiffLeft() == 1 
-					& this.getLeft().rankDiffLeft() == 2
-							& this.getLeft().rankDiffRight() == 2);
+			return (this.rankDiffLeft() == 3 && this.rankDiffRight() == 1
+					&& this.getRight().rankDiffLeft() == 2
+					&& this.getRight().rankDiffRight() == 2)
+					|| (this.rankDiffRight() == 3 && this.rankDiffLeft() == 1
+					&& this.getLeft().rankDiffLeft() == 2
+							&& this.getLeft().rankDiffRight() == 2);
 
 		}
 
@@ -805,13 +2869,13 @@ public class WAVLTree {
 		 * 
 		 * @return: true iff this is a case 3 node, i.e. (3,1) node with
 		 *          (1,1)/(2,1) right child, or (1,3) node with (1,1)/(1,2) left
-		 *          child
+		 *          child: the sibling's outer child is a 1-child
 		 */
 		public boolean deleteIsCase3() {
 			return ((this.rankDiffLeft() == 3 && this.rankDiffRight() == 1)
-					&& (this.getRight().rankDiffLeft() == 1))
+					&& (this.getRight().rankDiffRight() == 1))
 					|| ((this.rankDiffRight() == 3 && this.rankDiffLeft() == 1)
-							&& (this.getLeft().rankDiffRight() == 1));
+							&& (this.getLeft().rankDiffLeft() == 1));
 		}
 
 		public int deleteUpdateCase3() {
@@ -862,7 +2926,7 @@ public class WAVLTree {
 				this.getParent().getLeft().rank--;
 				this.getParent().getLeft().updateSize();
 			}
-			this.rank--;
+			this.rank -= 2; // double demote z
 			this.updateSize();
 			this.getParent().rank += 2;
 			this.getParent().updateSize();
@@ -898,9 +2962,6 @@ public class WAVLTree {
 			} else {
 				return null;
 			}
-			else {
-				return null;
-			}
 		}
 
 		/**
@@ -909,7 +2970,7 @@ public class WAVLTree {
 		public void setLeft(WAVLNode newLeft) {
 			this.left = newLeft;
 			if (newLeft!=EXT){
-				this.getLeft().setParent(this);
+				newLeft.parent = this;
 			}
 		}
 
@@ -926,8 +2987,7 @@ public class WAVLTree {
 		public void setRight(WAVLNode newRight) {
 			this.right = newRight;
 			if (newRight!=EXT){
-				this.getLeft().setParent(this);
-
+				newRight.parent = this;
 			}
 		}
 
@@ -941,20 +3001,21 @@ public class WAVLTree {
 		/**
 		 * @param newParent != EXT
 		 * @param newParent.key != this.key
+		 * @post: this is the left or right child of newParent, by key (null
+		 *        newParent makes this a root)
 		 */
 		public void setParent(WAVLNode newParent) {
 			this.parent = newParent;
+			if (newParent == null) {
+				return;
+			}
 			if (this.getKey() > newParent.getKey()) {
 				newParent.setRight(this);
 			} else {
 				newParent.setLeft(this);
 			}
 		}
-		
-		public int getRank() {
-			return this.rank;
-		}
-		
+
 		public void setRank(int newRank) {
 			this.rank = newRank;
 		}
@@ -989,9 +3050,6 @@ public class WAVLTree {
 			}
 		}
 
-	
-}
-  
 		/**
 		 * @return $ret min node such that $ret.key > $this.key
 		 * @post ($ret.rank < $this.rank) => $ret.left == EXT
@@ -1015,11 +3073,50 @@ public class WAVLTree {
 				while ((successorNode.getParent() != null) && successorNode.isRight()) {
 					successorNode = successorNode.getParent();
 				}
+				
+				// reached the root from the right, $this is the maximum
+				if (successorNode.getParent() == null) {
+					return this;
+				}
+				successorNode = successorNode.getParent();
 			}
 			
 			return successorNode;
 		}
 		
+		/**
+		 * @return $ret max node such that $ret.key < $this.key
+		 * @post ($ret == $this) => ($tree.min() == $this)
+		 */
+		public WAVLNode predecessor() {
+			WAVLNode predecessorNode;
+			
+			// if $this has a left subtree, predecessor is in it
+			if (this.hasLeft()) {
+				predecessorNode = this.getLeft();
+			
+				while (predecessorNode.hasRight()) {
+					predecessorNode = predecessorNode.getRight();
+				}
+			
+			// $this has no left subtree, predecessor is first left parent
+			} else {
+				predecessorNode = this;
+				
+				while ((predecessorNode.getParent() != null) && predecessorNode.isLeft()) {
+					predecessorNode = predecessorNode.getParent();
+				}
+				
+				// reached the root from the left, $this is the minimum
+				if (predecessorNode.getParent() == null) {
+					return this;
+				}
+				predecessorNode = predecessorNode.getParent();
+			}
+			
+			return predecessorNode;
+		}
+		
 		private boolean isRight() {
 			return (this.getParent().getRight() == this);
 		}
@@ -1067,6 +3164,7 @@ public class WAVLTree {
 			if (donor.getParent() == this) {
 				// transplant node has a leaf as a right child
 				donor.collapse();
+				donor.setRank(this.getRank());
 				return donor;
 				
 			} else if (donor == this) {
@@ -1085,7 +3183,7 @@ public class WAVLTree {
 				// assume that it is both a left child and that it has
 				// no left child.
 				WAVLNode newOrigin = donor.getParent();
-				newOrigin.setLeft(donor.getRight());
+				newOrigin.setLeft(donor.right); // may be EXT, which getRight() hides
 				this.replace(donor);
 				donor.setRank(this.getRank());
 				
@@ -1093,4 +3191,31 @@ public class WAVLTree {
 			}
 		}
 	}
+
+	/**
+	 * a node of an augmented tree: a WAVLNode with the tree's augmentation
+	 * and its aggregate, kept up to date by updateSize. plain trees use
+	 * WAVLNode, so only augmented trees pay for these fields.
+	 */
+	static final class AugmentedNode extends WAVLNode {
+
+		/**
+		 * aggregate holds a LongAugmentation or DoubleAugmentation (raw bits)
+		 * value, aggregateObject an ObjectAugmentation value.
+		 */
+		WAVLAugmentation augmentation;
+		long aggregate;
+		Object aggregateObject;
+
+		AugmentedNode(int key, String value, int size, int rank, WAVLAugmentation augmentation) {
+			super(key, value, size, rank);
+			this.augmentation = augmentation;
+		}
+
+		@Override
+		public void updateSize() {
+			super.updateSize();
+			this.augmentation.update(this, super.left, super.right);
+		}
+	}
 }
@@ -0,0 +1,223 @@
+import java.util.Arrays;
+
+/**
+ *
+ * WAVLTreeMetrics
+ *
+ * rebalancing counters of one WAVLTree: how often each insertion and
+ * deletion case fired, how many rotations were done, and histograms of the
+ * promotion chain length per insert and of the search path length.
+ *
+ * metrics are only recorded when the JVM runs with -Dwavl.metrics=true and
+ * WAVLTree.enableMetrics() was called. the property is read into a static
+ * final, so without it the JIT folds every recording branch away.
+ *
+ * not thread safe, like WAVLTree itself.
+ *
+ */
+
+public class WAVLTreeMetrics {
+
+	/**
+	 * operations slower than this are committed as WAVLOperationEvent to JFR
+	 * (the event's own threshold setting applies on top of it)
+	 */
+	private long slowOperationNanos;
+
+	long insertCase1;
+	long insertCase2;
+	long insertCase3;
+	long delete22Leaf;
+	long deleteCase1;
+	long deleteCase2;
+	long deleteCase3;
+	long deleteCase4;
+	long singleRotations;
+	long doubleRotations;
+
+	final Histogram promotionChain = new Histogram();
+	final Histogram searchDepth = new Histogram();
+
+	/**
+	 * @pre slowOperationNanos >= 0
+	 */
+	WAVLTreeMetrics(long slowOperationNanos) {
+		this.slowOperationNanos = slowOperationNanos;
+	}
+
+	public long getInsertCase1() {
+		return insertCase1;
+	}
+
+	public long getInsertCase2() {
+		return insertCase2;
+	}
+
+	public long getInsertCase3() {
+		return insertCase3;
+	}
+
+	public long getDelete22Leaf() {
+		return delete22Leaf;
+	}
+
+	public long getDeleteCase1() {
+		return deleteCase1;
+	}
+
+	public long getDeleteCase2() {
+		return deleteCase2;
+	}
+
+	public long getDeleteCase3() {
+		return deleteCase3;
+	}
+
+	public long getDeleteCase4() {
+		return deleteCase4;
+	}
+
+	public long getSingleRotations() {
+		return singleRotations;
+	}
+
+	public long getDoubleRotations() {
+		return doubleRotations;
+	}
+
+	/**
+	 * @return number of rotations, a double rotation counting as two
+	 */
+	public long getRotations() {
+		return singleRotations + 2 * doubleRotations;
+	}
+
+	/**
+	 * @return histogram of the number of case 1 promotions per insert
+	 */
+	public Histogram getPromotionChain() {
+		return promotionChain;
+	}
+
+	/**
+	 * @return histogram of the key comparisons per searchNode call, i.e. the
+	 *         length of the search path including the climb from the finger
+	 */
+	public Histogram getSearchDepth() {
+		return searchDepth;
+	}
+
+	public long getSlowOperationNanos() {
+		return slowOperationNanos;
+	}
+
+	/**
+	 * @pre nanos >= 0
+	 */
+	public void setSlowOperationNanos(long nanos) {
+		this.slowOperationNanos = nanos;
+	}
+
+	/**
+	 * @post all counters and histograms are 0
+	 */
+	public void reset() {
+		insertCase1 = insertCase2 = insertCase3 = 0;
+		delete22Leaf = deleteCase1 = deleteCase2 = deleteCase3 = deleteCase4 = 0;
+		singleRotations = doubleRotations = 0;
+		promotionChain.reset();
+		searchDepth.reset();
+	}
+
+	/**
+	 * @return event to time an operation with, or null if JFR does not
+	 *         record WAVLOperationEvent
+	 */
+	WAVLOperationEvent beginOperation() {
+		WAVLOperationEvent event = new WAVLOperationEvent();
+		if (!event.isEnabled()) {
+			return null;
+		}
+		event.startNanos = System.nanoTime();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * commits event if the operation took at least slowOperationNanos
+	 */
+	void endOperation(WAVLOperationEvent event, String operation, int key, int ops, int size) {
+		if (event == null) {
+			return;
+		}
+		event.end();
+		if (System.nanoTime() - event.startNanos >= slowOperationNanos && event.shouldCommit()) {
+			event.operation = operation;
+			event.key = key;
+			event.rebalancingOps = ops;
+			event.treeSize = size;
+			event.commit();
+		}
+	}
+
+	public String toString() {
+		return "insert cases 1/2/3: " + insertCase1 + "/" + insertCase2 + "/" + insertCase3
+				+ ", delete 2,2 leaf/cases 1/2/3/4: " + delete22Leaf + "/" + deleteCase1 + "/"
+				+ deleteCase2 + "/" + deleteCase3 + "/" + deleteCase4
+				+ ", rotations single/double: " + singleRotations + "/" + doubleRotations
+				+ ", promotion chain: " + promotionChain + ", search depth: " + searchDepth;
+	}
+
+	/**
+	 * public static class Histogram
+	 *
+	 * counts of small non-negative values, one bucket per value up to
+	 * BUCKETS - 1; larger values go into the last bucket.
+	 */
+	public static class Histogram {
+		public static final int BUCKETS = 64;
+
+		private final long[] counts = new long[BUCKETS];
+		private long total;
+		private long sum;
+		private int max;
+
+		void record(int value) {
+			counts[Math.min(value, BUCKETS - 1)]++;
+			total++;
+			sum += value;
+			if (value > max) {
+				max = value;
+			}
+		}
+
+		void reset() {
+			Arrays.fill(counts, 0);
+			total = sum = max = 0;
+		}
+
+		/**
+		 * @return number of recorded values equal to value (for the last
+		 *         bucket: at least value)
+		 */
+		public long count(int value) {
+			return counts[Math.min(value, BUCKETS - 1)];
+		}
+
+		public long total() {
+			return total;
+		}
+
+		public int max() {
+			return max;
+		}
+
+		public double mean() {
+			return (total == 0) ? 0 : (double) sum / total;
+		}
+
+		public String toString() {
+			return String.format("n=%d mean=%.2f max=%d", total, mean(), max);
+		}
+	}
+}
@@ -0,0 +1,206 @@
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ *
+ * BlockedWAVLTreeBenchmark
+ *
+ * BlockedWAVLTree (sorted key runs per node) against WAVLTree (one node per
+ * key) for search, select, insert and delete, over a few block sizes. the
+ * gc profiler shows the allocation per insert, which drops from one
+ * WAVLNode per key to one block per split.
+ *
+ */
+
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class BlockedWAVLTreeBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class ReadState {
+
+		@Param({ "100000", "1000000", "10000000" })
+		public int size;
+
+		@Param({ "32", "64", "128" })
+		public int blockSize;
+
+		@Param({ "SEQUENTIAL", "RANDOM" })
+		public KeyStreams.Distribution dist;
+
+		WAVLTree tree;
+		BlockedWAVLTree blocked;
+		int[] keyProbes;
+		int[] rankProbes;
+		int cursor;
+
+		@Setup(Level.Trial)
+		public void setup() {
+			int[] population = KeyStreams.population(size, dist, WAVLTreeBenchmark.SEED);
+			tree = RelaxedDeleteBenchmark.newTree(population, false);
+			blocked = populate(population, blockSize);
+			keyProbes = KeyStreams.presentKeys(size, WAVLTreeBenchmark.BATCH, dist, WAVLTreeBenchmark.SEED + 1);
+			rankProbes = KeyStreams.indices(size, WAVLTreeBenchmark.BATCH, dist, WAVLTreeBenchmark.SEED + 2);
+			for (int i = 0; i < rankProbes.length; i++) {
+				rankProbes[i]++; // select is 1-based
+			}
+		}
+
+		int nextKey() {
+			cursor = (cursor + 1) & (WAVLTreeBenchmark.BATCH - 1);
+			return keyProbes[cursor];
+		}
+
+		int nextRank() {
+			cursor = (cursor + 1) & (WAVLTreeBenchmark.BATCH - 1);
+			return rankProbes[cursor];
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class WriteState {
+
+		@Param({ "100000", "1000000" })
+		public int size;
+
+		@Param({ "32", "64", "128" })
+		public int blockSize;
+
+		@Param({ "SEQUENTIAL", "RANDOM" })
+		public KeyStreams.Distribution dist;
+
+		int[] population;
+		int[] toInsert;
+		int[] toDelete;
+		WAVLTree tree;
+		BlockedWAVLTree blocked;
+
+		@Setup(Level.Trial)
+		public void setupTrial() {
+			population = KeyStreams.population(size, dist, WAVLTreeBenchmark.SEED);
+			int batch = Math.min(WAVLTreeBenchmark.BATCH, size);
+			toInsert = KeyStreams.absentKeys(size, batch, dist, WAVLTreeBenchmark.SEED + 3);
+			toDelete = KeyStreams.presentKeys(size, batch, dist, WAVLTreeBenchmark.SEED + 4);
+		}
+
+		@Setup(Level.Iteration)
+		public void setupIteration() {
+			tree = RelaxedDeleteBenchmark.newTree(population, false);
+			blocked = populate(population, blockSize);
+		}
+	}
+
+	static BlockedWAVLTree populate(int[] population, int blockSize) {
+		BlockedWAVLTree blocked = new BlockedWAVLTree(blockSize);
+		for (int key : population) {
+			blocked.insert(key, WAVLTreeBenchmark.valueOf(key));
+		}
+		return blocked;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public String search(ReadState s) {
+		return s.tree.search(s.nextKey());
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public String searchBlocked(ReadState s) {
+		return s.blocked.search(s.nextKey());
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public String select(ReadState s) {
+		return s.tree.select(s.nextRank());
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public String selectBlocked(ReadState s) {
+		return s.blocked.select(s.nextRank());
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Warmup(iterations = 5, batchSize = 1)
+	@Measurement(iterations = 20, batchSize = 1)
+	public int insert(WriteState s) {
+		int ops = 0;
+		for (int key : s.toInsert) {
+			ops += s.tree.insert(key, WAVLTreeBenchmark.valueOf(key));
+		}
+		return ops;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Warmup(iterations = 5, batchSize = 1)
+	@Measurement(iterations = 20, batchSize = 1)
+	public int insertBlocked(WriteState s) {
+		int ops = 0;
+		for (int key : s.toInsert) {
+			ops += s.blocked.insert(key, WAVLTreeBenchmark.valueOf(key));
+		}
+		return ops;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Warmup(iterations = 5, batchSize = 1)
+	@Measurement(iterations = 20, batchSize = 1)
+	public int delete(WriteState s) {
+		int ops = 0;
+		for (int key : s.toDelete) {
+			ops += s.tree.delete(key);
+		}
+		return ops;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Warmup(iterations = 5, batchSize = 1)
+	@Measurement(iterations = 20, batchSize = 1)
+	public int deleteBlocked(WriteState s) {
+		int ops = 0;
+		for (int key : s.toDelete) {
+			ops += s.blocked.delete(key);
+		}
+		return ops;
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options opt = new OptionsBuilder()
+				.include(BlockedWAVLTreeBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(opt).run();
+	}
+}
@@ -0,0 +1,165 @@
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ *
+ * ConcurrentWAVLTreeBenchmark
+ *
+ * throughput of a mixed search/insert/delete workload on a shared map, for
+ * ConcurrentWAVLTree, a WAVLTree behind one lock, and ConcurrentSkipListMap.
+ * main() runs the suite at 1, 2, 4, ..., 64 threads.
+ *
+ * keys are uniform in [0, range), and the map is pre-filled to half of the
+ * range, so inserts and deletes succeed about half of the time and the size
+ * stays stable.
+ *
+ */
+
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConcurrentWAVLTreeBenchmark {
+
+	public static final int[] THREAD_COUNTS = { 1, 2, 4, 8, 16, 32, 64 };
+
+	/**
+	 * the operations each map has to support
+	 */
+	interface IntStringMap {
+		String search(int k);
+
+		void insert(int k, String i);
+
+		void delete(int k);
+	}
+
+	static final class ConcurrentTreeMap implements IntStringMap {
+		private final ConcurrentWAVLTree tree = new ConcurrentWAVLTree();
+
+		public String search(int k) {
+			return tree.search(k);
+		}
+
+		public void insert(int k, String i) {
+			tree.insert(k, i);
+		}
+
+		public void delete(int k) {
+			tree.delete(k);
+		}
+	}
+
+	/**
+	 * the baseline: one global lock around the sequential tree
+	 */
+	static final class SynchronizedTreeMap implements IntStringMap {
+		private final WAVLTree tree = new WAVLTree();
+
+		public synchronized String search(int k) {
+			return tree.search(k);
+		}
+
+		public synchronized void insert(int k, String i) {
+			tree.insert(k, i);
+		}
+
+		public synchronized void delete(int k) {
+			tree.delete(k);
+		}
+	}
+
+	static final class SkipListMap implements IntStringMap {
+		private final ConcurrentSkipListMap<Integer, String> map = new ConcurrentSkipListMap<Integer, String>();
+
+		public String search(int k) {
+			return map.get(k);
+		}
+
+		public void insert(int k, String i) {
+			map.putIfAbsent(k, i);
+		}
+
+		public void delete(int k) {
+			map.remove(k);
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class SharedMap {
+
+		@Param({ "CONCURRENT", "SYNCHRONIZED", "SKIPLIST" })
+		public String impl;
+
+		@Param({ "1000", "1000000" })
+		public int range;
+
+		/**
+		 * percentage of searches; the rest is split evenly between inserts
+		 * and deletes
+		 */
+		@Param({ "90", "50", "0" })
+		public int searchPercent;
+
+		IntStringMap map;
+
+		@Setup(Level.Trial)
+		public void setup() {
+			if (impl.equals("CONCURRENT")) {
+				map = new ConcurrentTreeMap();
+			} else if (impl.equals("SYNCHRONIZED")) {
+				map = new SynchronizedTreeMap();
+			} else {
+				map = new SkipListMap();
+			}
+			for (int key : KeyStreams.population(range / 2, KeyStreams.Distribution.RANDOM, 1)) {
+				map.insert(key, WAVLTreeBenchmark.valueOf(key));
+			}
+		}
+	}
+
+	@Benchmark
+	public Object mixed(SharedMap s) {
+		ThreadLocalRandom rnd = ThreadLocalRandom.current();
+		int key = rnd.nextInt(s.range);
+		int op = rnd.nextInt(100);
+		if (op < s.searchPercent) {
+			return s.map.search(key);
+		}
+		if ((op & 1) == 0) {
+			s.map.insert(key, "v");
+		} else {
+			s.map.delete(key);
+		}
+		return null;
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		for (int threads : THREAD_COUNTS) {
+			Options opt = new OptionsBuilder()
+					.include(ConcurrentWAVLTreeBenchmark.class.getSimpleName())
+					.threads(threads)
+					.build();
+			new Runner(opt).run();
+		}
+	}
+}
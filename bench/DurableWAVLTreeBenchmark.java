@@ -0,0 +1,107 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ *
+ * DurableWAVLTreeBenchmark
+ *
+ * durable mutations per second of DurableWAVLTree, for several group commit
+ * (fsync batch) sizes. main() runs the suite at 1, 8 and 64 writer threads:
+ * with few writers, a large batch is only reached by waiting out
+ * groupCommitMicros, so the interesting numbers are at higher thread counts.
+ *
+ * the log lives in a temporary directory; run on the device to be measured
+ * (set java.io.tmpdir), since force() cost is what this measures.
+ *
+ */
+
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DurableWAVLTreeBenchmark {
+
+	public static final int[] THREAD_COUNTS = { 1, 8, 64 };
+
+	@State(Scope.Benchmark)
+	public static class Log {
+
+		@Param({ "1", "8", "64", "512" })
+		public int groupCommitSize;
+
+		@Param({ "1000" })
+		public long groupCommitMicros;
+
+		@Param({ "1000000" })
+		public int checkpointInterval;
+
+		@Param({ "100000" })
+		public int range;
+
+		Path dir;
+		DurableWAVLTree tree;
+
+		@Setup(Level.Trial)
+		public void setup() throws IOException {
+			dir = Files.createTempDirectory("wavl-wal");
+			tree = DurableWAVLTree.open(dir, groupCommitSize, TimeUnit.MICROSECONDS.toNanos(groupCommitMicros),
+					checkpointInterval);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() throws IOException {
+			tree.close();
+			try (Stream<Path> files = Files.walk(dir)) {
+				files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+			}
+		}
+	}
+
+	/**
+	 * inserts and deletes alternate at random over [0, range), so about half
+	 * of them change the tree and are logged
+	 */
+	@Benchmark
+	public int mutate(Log s) {
+		ThreadLocalRandom rnd = ThreadLocalRandom.current();
+		int key = rnd.nextInt(s.range);
+		if (rnd.nextBoolean()) {
+			return s.tree.insert(key, WAVLTreeBenchmark.valueOf(key));
+		}
+		return s.tree.delete(key);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		for (int threads : THREAD_COUNTS) {
+			Options opt = new OptionsBuilder()
+					.include(DurableWAVLTreeBenchmark.class.getSimpleName())
+					.threads(threads)
+					.build();
+			new Runner(opt).run();
+		}
+	}
+}
@@ -0,0 +1,76 @@
+import java.util.Random;
+
+/**
+ *
+ * FingerSearchReport
+ *
+ * prints the average number of key comparisons per WAVLTree.insert, for
+ * sorted, near-sorted and random key streams, in three setups: root (every
+ * search from the root), append (the append fast path only, the default)
+ * and finger (finger search on too). comparisons are deterministic, so
+ * this is a plain main() and not a JMH benchmark. WAVLTree counts them
+ * only with -Dwavl.metrics=true, so run it with that flag.
+ *
+ * near-sorted: ascending keys where each key is swapped with one at most
+ * WINDOW positions later, with probability SWAP_PERCENT.
+ *
+ */
+
+public class FingerSearchReport {
+
+	public static final int[] SIZES = { 1000, 100000, 1000000 };
+	public static final int WINDOW = 16;
+	public static final int SWAP_PERCENT = 10;
+
+	public static void main(String[] args) {
+		if (!WAVLTree.METRICS_ENABLED) {
+			throw new IllegalStateException("run with -Dwavl.metrics=true, key comparisons are not counted");
+		}
+		System.out.printf("%-12s %10s %14s %14s %14s%n", "stream", "n", "root cmp/ins", "append cmp/ins",
+				"finger cmp/ins");
+		for (int n : SIZES) {
+			report("sorted", sorted(n));
+			report("near-sorted", nearSorted(n, 1));
+			report("random", KeyStreams.population(n, KeyStreams.Distribution.RANDOM, 1));
+		}
+	}
+
+	private static void report(String name, int[] keys) {
+		double root = comparisonsPerInsert(keys, false, false);
+		double append = comparisonsPerInsert(keys, true, false);
+		double finger = comparisonsPerInsert(keys, true, true);
+		System.out.printf("%-12s %10d %14.2f %14.2f %14.2f%n", name, keys.length, root, append, finger);
+	}
+
+	private static double comparisonsPerInsert(int[] keys, boolean appendEnabled, boolean fingerEnabled) {
+		WAVLTree tree = new WAVLTree();
+		tree.setAppendFastPathEnabled(appendEnabled);
+		tree.setFingerEnabled(fingerEnabled);
+		for (int key : keys) {
+			tree.insert(key, "v");
+		}
+		return (double) tree.getKeyComparisons() / keys.length;
+	}
+
+	private static int[] sorted(int n) {
+		int[] keys = new int[n];
+		for (int i = 0; i < n; i++) {
+			keys[i] = 2 * i;
+		}
+		return keys;
+	}
+
+	private static int[] nearSorted(int n, long seed) {
+		int[] keys = sorted(n);
+		Random rnd = new Random(seed);
+		for (int i = 0; i < n; i++) {
+			if (rnd.nextInt(100) < SWAP_PERCENT) {
+				int j = Math.min(n - 1, i + 1 + rnd.nextInt(WINDOW));
+				int tmp = keys[i];
+				keys[i] = keys[j];
+				keys[j] = tmp;
+			}
+		}
+		return keys;
+	}
+}
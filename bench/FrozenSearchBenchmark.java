@@ -0,0 +1,104 @@
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ *
+ * FrozenSearchBenchmark
+ *
+ * lookup latency of a FrozenWAVLTree (Eytzinger layout, WAVLTree.freeze())
+ * against WAVLTree.searchNode on the tree it was frozen from. sizes run
+ * from about L2 resident (2^14 keys, under 200 KB frozen) to far beyond the
+ * last level cache (2^24 keys). probes are random present keys, so every
+ * search goes down a full path.
+ *
+ */
+
+@Fork(value = 1, jvmArgsAppend = { "-Xms8g", "-Xmx8g" })
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FrozenSearchBenchmark {
+
+	/**
+	 * number of distinct probes, large enough that the probed paths do not
+	 * stay cached at the big sizes
+	 */
+	public static final int PROBES = 1 << 20;
+
+	@State(Scope.Benchmark)
+	public static class Trees {
+
+		@Param({ "16384", "131072", "1048576", "4194304", "16777216" })
+		public int size;
+
+		WAVLTree tree;
+		FrozenWAVLTree frozen;
+		int[] probes;
+		int cursor;
+
+		@Setup(Level.Trial)
+		public void setup() {
+			int[] keys = KeyStreams.population(size, KeyStreams.Distribution.RANDOM, WAVLTreeBenchmark.SEED);
+			String[] values = new String[size];
+			for (int i = 0; i < size; i++) {
+				values[i] = WAVLTreeBenchmark.valueOf(keys[i]);
+			}
+			tree = WAVLTree.fromArrays(keys, values);
+			frozen = tree.freeze();
+			probes = KeyStreams.presentKeys(size, PROBES, KeyStreams.Distribution.RANDOM,
+					WAVLTreeBenchmark.SEED + 1);
+		}
+
+		int nextProbe() {
+			int key = probes[cursor];
+			cursor = (cursor + 1) & (probes.length - 1);
+			return key;
+		}
+	}
+
+	@Benchmark
+	public Object searchNode(Trees s) {
+		return s.tree.searchNode(s.nextProbe());
+	}
+
+	@Benchmark
+	public String searchFrozen(Trees s) {
+		return s.frozen.search(s.nextProbe());
+	}
+
+	@Benchmark
+	public int rankFrozen(Trees s) {
+		return s.frozen.rank(s.nextProbe());
+	}
+
+	@Benchmark
+	public int rankTree(Trees s) {
+		return s.tree.rank(s.nextProbe());
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options opt = new OptionsBuilder()
+				.include(FrozenSearchBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(opt).run();
+	}
+}
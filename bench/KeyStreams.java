@@ -0,0 +1,175 @@
+import java.util.Random;
+
+/**
+ *
+ * KeyStreams
+ *
+ * Key generators used by the WAVLTree benchmarks. Every stream produces
+ * even keys only (2*i), so odd keys are guaranteed to be absent from a tree
+ * populated by it and can be used as insertion probes.
+ *
+ */
+
+public final class KeyStreams {
+
+	/**
+	 * the distribution a key stream (or a probe stream) is drawn from
+	 */
+	public enum Distribution {
+		SEQUENTIAL, RANDOM, ZIPFIAN
+	}
+
+	/**
+	 * skew used by the zipfian generator (same default as YCSB)
+	 */
+	public static final double ZIPF_THETA = 0.99;
+
+	private KeyStreams() {
+	}
+
+	/**
+	 * @pre n >= 0
+	 * @return the keys 0, 2, ..., 2*(n-1) in insertion order: ascending for
+	 *         SEQUENTIAL, a uniform shuffle for RANDOM and ZIPFIAN.
+	 */
+	public static int[] population(int n, Distribution dist, long seed) {
+		int[] keys = new int[n];
+		for (int i = 0; i < n; i++) {
+			keys[i] = 2 * i;
+		}
+		if (dist != Distribution.SEQUENTIAL) {
+			shuffle(keys, new Random(seed));
+		}
+		return keys;
+	}
+
+	/**
+	 * @pre n > 0, count >= 0
+	 * @return count indices in [0, n) drawn from dist. SEQUENTIAL cycles
+	 *         through [0, n) in order, RANDOM is uniform, ZIPFIAN favours a
+	 *         few hot indices scattered over the whole range.
+	 */
+	public static int[] indices(int n, int count, Distribution dist, long seed) {
+		int[] result = new int[count];
+		Random rnd = new Random(seed);
+		switch (dist) {
+		case SEQUENTIAL:
+			for (int i = 0; i < count; i++) {
+				result[i] = i % n;
+			}
+			break;
+		case RANDOM:
+			for (int i = 0; i < count; i++) {
+				result[i] = rnd.nextInt(n);
+			}
+			break;
+		default:
+			Zipf zipf = new Zipf(n, ZIPF_THETA);
+			for (int i = 0; i < count; i++) {
+				// scatter the hot ranks so they are not all in the left spine
+				result[i] = (int) (scramble(zipf.next(rnd)) % n);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return keys drawn from dist over a population of n keys, i.e. 2*idx
+	 */
+	public static int[] presentKeys(int n, int count, Distribution dist, long seed) {
+		int[] result = indices(n, count, dist, seed);
+		for (int i = 0; i < count; i++) {
+			result[i] = 2 * result[i];
+		}
+		return result;
+	}
+
+	/**
+	 * @pre count <= n
+	 * @return count distinct odd keys (absent from the population), drawn
+	 *         from dist
+	 */
+	public static int[] absentKeys(int n, int count, Distribution dist, long seed) {
+		int[] result = new int[count];
+		boolean[] used = new boolean[n];
+		int[] candidates = indices(n, 4 * count, dist, seed);
+		int written = 0;
+		for (int i = 0; i < candidates.length && written < count; i++) {
+			if (!used[candidates[i]]) {
+				used[candidates[i]] = true;
+				result[written++] = 2 * candidates[i] + 1;
+			}
+		}
+		// skewed streams repeat a lot; fill up with the nearest unused slots
+		for (int i = 0; written < count; i++) {
+			if (!used[i]) {
+				used[i] = true;
+				result[written++] = 2 * i + 1;
+			}
+		}
+		return result;
+	}
+
+	private static void shuffle(int[] array, Random rnd) {
+		for (int i = array.length - 1; i > 0; i--) {
+			int j = rnd.nextInt(i + 1);
+			int temp = array[i];
+			array[i] = array[j];
+			array[j] = temp;
+		}
+	}
+
+	/**
+	 * FNV style hash, used to spread zipfian ranks over the key range
+	 */
+	private static long scramble(long value) {
+		long hash = 0xCBF29CE484222325L;
+		for (int i = 0; i < 8; i++) {
+			hash ^= (value & 0xFF);
+			hash *= 0x100000001B3L;
+			value >>>= 8;
+		}
+		return hash & Long.MAX_VALUE;
+	}
+
+	/**
+	 * zipfian generator over [0, n) (Gray et al. '94, as used by YCSB).
+	 * zeta(n) is computed once in O(n).
+	 */
+	private static final class Zipf {
+		private final int n;
+		private final double theta;
+		private final double alpha;
+		private final double zetan;
+		private final double eta;
+
+		Zipf(int n, double theta) {
+			this.n = n;
+			this.theta = theta;
+			this.alpha = 1.0 / (1.0 - theta);
+			this.zetan = zeta(n, theta);
+			double zeta2 = zeta(2, theta);
+			this.eta = (1 - Math.pow(2.0 / n, 1 - theta)) / (1 - zeta2 / zetan);
+		}
+
+		private static double zeta(int n, double theta) {
+			double sum = 0;
+			for (int i = 1; i <= n; i++) {
+				sum += 1 / Math.pow(i, theta);
+			}
+			return sum;
+		}
+
+		long next(Random rnd) {
+			double u = rnd.nextDouble();
+			double uz = u * zetan;
+			if (uz < 1.0) {
+				return 0;
+			}
+			if (uz < 1.0 + Math.pow(0.5, theta)) {
+				return 1;
+			}
+			return (long) (n * Math.pow(eta * u - eta + 1, alpha));
+		}
+	}
+}
@@ -0,0 +1,81 @@
+import java.util.TreeMap;
+
+/**
+ *
+ * NodeMemoryReport
+ *
+ * prints the heap bytes per entry of WAVLTree (one WAVLNode object per
+ * item), ArrayWAVLTree (parallel arrays, rank differences packed into the
+ * size entry) and java.util.TreeMap, measured as the growth of the used
+ * heap after a full GC. all entries share one value string, so only the
+ * tree structure is counted.
+ *
+ * expected, with compressed oops:
+ *   WAVLTree      40 bytes: 12 header + key, size, rank + 4 references.
+ *                 a rank-bits layout would save nothing here, since a 36
+ *                 byte object is padded back to 40. an augmented tree's
+ *                 AugmentedNode adds a reference, a long and an object
+ *                 aggregate, 56 bytes.
+ *   ArrayWAVLTree 24 bytes: key, size+bits, left, right, parent + value
+ *                 reference (28 with the former separate rank array).
+ *   TreeMap       40 bytes per Entry, plus 16 per boxed key.
+ *
+ * run with a fixed heap, e.g. -Xms4g -Xmx4g, for stable numbers.
+ *
+ */
+
+public class NodeMemoryReport {
+
+	public static final int[] SIZES = { 100000, 1000000, 10000000 };
+	private static final String VALUE = "v";
+
+	public static void main(String[] args) {
+		System.out.printf("%-14s %10s %12s%n", "layout", "n", "bytes/entry");
+		for (int n : SIZES) {
+			int[] keys = KeyStreams.population(n, KeyStreams.Distribution.RANDOM, WAVLTreeBenchmark.SEED);
+
+			long before = usedHeap();
+			WAVLTree tree = new WAVLTree();
+			for (int key : keys) {
+				tree.insert(key, VALUE);
+			}
+			long bytes = usedHeap() - before;
+			report("WAVLTree", tree.size(), bytes);
+			tree = null;
+
+			before = usedHeap();
+			ArrayWAVLTree arrayTree = new ArrayWAVLTree(n);
+			for (int key : keys) {
+				arrayTree.insert(key, VALUE);
+			}
+			bytes = usedHeap() - before;
+			report("ArrayWAVLTree", arrayTree.size(), bytes);
+			arrayTree = null;
+
+			before = usedHeap();
+			TreeMap<Integer, String> map = new TreeMap<Integer, String>();
+			for (int key : keys) {
+				map.put(key, VALUE);
+			}
+			bytes = usedHeap() - before;
+			report("TreeMap", map.size(), bytes);
+			map = null;
+		}
+	}
+
+	/**
+	 * n is read from the structure after measuring, so it stays reachable
+	 * until then
+	 */
+	private static void report(String layout, int n, long bytes) {
+		System.out.printf("%-14s %10d %12.1f%n", layout, n, (double) bytes / n);
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 4; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,163 @@
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ *
+ * RelaxedDeleteBenchmark
+ *
+ * WAVLTree.delete with rebalancing (STRICT) against deletion without
+ * rebalancing (RELAXED, see WAVLTree.setRelaxedDeletes):
+ * - delete: latency of BATCH deletes, in single shot mode.
+ * - searchAfterChurn: search latency after CHURN_ROUNDS rounds of deleting
+ *   and re-inserting half of the keys, which is where relaxed deletes let
+ *   the tree drift from balance.
+ *
+ * main() first prints the average item depth after the same churn for both
+ * modes, then runs the benchmarks.
+ *
+ */
+
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class RelaxedDeleteBenchmark {
+
+	public static final int CHURN_ROUNDS = 4;
+
+	@State(Scope.Benchmark)
+	public static class DeleteState {
+
+		@Param({ "10000", "1000000" })
+		public int size;
+
+		@Param({ "STRICT", "RELAXED" })
+		public String mode;
+
+		@Param({ "SEQUENTIAL", "RANDOM" })
+		public KeyStreams.Distribution dist;
+
+		int[] population;
+		int[] toDelete;
+		WAVLTree tree;
+
+		@Setup(Level.Trial)
+		public void setupTrial() {
+			population = KeyStreams.population(size, dist, WAVLTreeBenchmark.SEED);
+			toDelete = KeyStreams.presentKeys(size, Math.min(WAVLTreeBenchmark.BATCH, size), dist,
+					WAVLTreeBenchmark.SEED + 1);
+		}
+
+		@Setup(Level.Iteration)
+		public void setupIteration() {
+			tree = newTree(population, mode.equals("RELAXED"));
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class ChurnedState {
+
+		@Param({ "10000", "1000000" })
+		public int size;
+
+		@Param({ "STRICT", "RELAXED" })
+		public String mode;
+
+		WAVLTree tree;
+		int[] probes;
+		int cursor;
+
+		@Setup(Level.Trial)
+		public void setup() {
+			int[] population = KeyStreams.population(size, KeyStreams.Distribution.RANDOM, WAVLTreeBenchmark.SEED);
+			tree = newTree(population, mode.equals("RELAXED"));
+			churn(tree, population, WAVLTreeBenchmark.SEED + 2);
+			probes = KeyStreams.presentKeys(size, WAVLTreeBenchmark.BATCH, KeyStreams.Distribution.RANDOM,
+					WAVLTreeBenchmark.SEED + 3);
+		}
+	}
+
+	static WAVLTree newTree(int[] population, boolean relaxed) {
+		WAVLTree tree = new WAVLTree();
+		tree.setRelaxedDeletes(relaxed);
+		for (int key : population) {
+			tree.insert(key, WAVLTreeBenchmark.valueOf(key));
+		}
+		return tree;
+	}
+
+	/**
+	 * CHURN_ROUNDS times: delete a random half of population, then insert it
+	 * back
+	 */
+	static void churn(WAVLTree tree, int[] population, long seed) {
+		Random rnd = new Random(seed);
+		int[] half = new int[population.length / 2];
+		for (int round = 0; round < CHURN_ROUNDS; round++) {
+			for (int i = 0; i < half.length; i++) {
+				half[i] = population[rnd.nextInt(population.length)];
+				tree.delete(half[i]);
+			}
+			for (int key : half) {
+				tree.insert(key, WAVLTreeBenchmark.valueOf(key));
+			}
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Warmup(iterations = 5, batchSize = 1)
+	@Measurement(iterations = 20, batchSize = 1)
+	public int delete(DeleteState s) {
+		int ops = 0;
+		for (int key : s.toDelete) {
+			ops += s.tree.delete(key);
+		}
+		return ops;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public String searchAfterChurn(ChurnedState s) {
+		int key = s.probes[s.cursor];
+		s.cursor = (s.cursor + 1) & (s.probes.length - 1);
+		return s.tree.search(key);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		System.out.printf("%-8s %10s %14s %14s%n", "mode", "n", "depth before", "depth after");
+		for (int size : new int[] { 10000, 1000000 }) {
+			int[] population = KeyStreams.population(size, KeyStreams.Distribution.RANDOM, WAVLTreeBenchmark.SEED);
+			for (boolean relaxed : new boolean[] { false, true }) {
+				WAVLTree tree = newTree(population, relaxed);
+				double before = tree.averageDepth();
+				churn(tree, population, WAVLTreeBenchmark.SEED + 2);
+				System.out.printf("%-8s %10d %14.2f %14.2f%n", relaxed ? "RELAXED" : "STRICT", size, before,
+						tree.averageDepth());
+			}
+		}
+
+		Options opt = new OptionsBuilder()
+				.include(RelaxedDeleteBenchmark.class.getSimpleName())
+				.build();
+		new Runner(opt).run();
+	}
+}
@@ -0,0 +1,110 @@
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ *
+ * SpecializedTreeBenchmark
+ *
+ * lookup of a numeric payload: WAVLTree with the number stored as String
+ * info (parsed on every search) against IntLongWAVLTree, and 64 bit ids:
+ * LongWAVLTree against GenericWAVLTree<Long, String>, which boxes the
+ * probe and compares through compareTo. the gc profiler shows the
+ * allocation per lookup.
+ *
+ */
+
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SpecializedTreeBenchmark {
+
+	/**
+	 * ids are spread over the long range, so none fits an int
+	 */
+	static long idOf(int key) {
+		return ((long) key << 32) | 0x9E37L;
+	}
+
+	@State(Scope.Benchmark)
+	public static class Trees {
+
+		@Param({ "10000", "1000000" })
+		public int size;
+
+		WAVLTree stringTree;
+		IntLongWAVLTree intLongTree;
+		LongWAVLTree<String> longTree;
+		GenericWAVLTree<Long, String> genericTree;
+		int[] probes;
+		int cursor;
+
+		@Setup(Level.Trial)
+		public void setup() {
+			stringTree = new WAVLTree();
+			intLongTree = new IntLongWAVLTree();
+			longTree = new LongWAVLTree<String>();
+			genericTree = new GenericWAVLTree<Long, String>();
+			for (int key : KeyStreams.population(size, KeyStreams.Distribution.RANDOM, WAVLTreeBenchmark.SEED)) {
+				long payload = key * 31L;
+				stringTree.insert(key, Long.toString(payload));
+				intLongTree.insert(key, payload);
+				longTree.insert(idOf(key), WAVLTreeBenchmark.valueOf(key));
+				genericTree.insert(idOf(key), WAVLTreeBenchmark.valueOf(key));
+			}
+			probes = KeyStreams.presentKeys(size, WAVLTreeBenchmark.BATCH, KeyStreams.Distribution.RANDOM,
+					WAVLTreeBenchmark.SEED + 1);
+		}
+
+		int nextProbe() {
+			cursor = (cursor + 1) & (WAVLTreeBenchmark.BATCH - 1);
+			return probes[cursor];
+		}
+	}
+
+	@Benchmark
+	public long payloadString(Trees s) {
+		return Long.parseLong(s.stringTree.search(s.nextProbe()));
+	}
+
+	@Benchmark
+	public long payloadIntLong(Trees s) {
+		return s.intLongTree.search(s.nextProbe(), -1L);
+	}
+
+	@Benchmark
+	public String idLong(Trees s) {
+		return s.longTree.search(idOf(s.nextProbe()));
+	}
+
+	@Benchmark
+	public String idGeneric(Trees s) {
+		return s.genericTree.search(idOf(s.nextProbe()));
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options opt = new OptionsBuilder()
+				.include(SpecializedTreeBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(opt).run();
+	}
+}
@@ -0,0 +1,92 @@
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ *
+ * UpsertBenchmark
+ *
+ * the counters workload: every operation updates the info of a key that
+ * is already in the tree. deleteInsert is the only way before put (two
+ * searches, two rebalancing passes, a node dropped and a node allocated);
+ * put and merge update the node in place, without rebalancing. the gc
+ * profiler shows the node deleteInsert allocates per operation.
+ *
+ */
+
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UpsertBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class Counters {
+
+		@Param({ "10000", "1000000" })
+		public int size;
+
+		@Param({ "RANDOM", "ZIPFIAN" })
+		public KeyStreams.Distribution dist;
+
+		WAVLTree tree;
+		int[] probes;
+		int cursor;
+
+		@Setup(Level.Trial)
+		public void setup() {
+			tree = new WAVLTree();
+			for (int key : KeyStreams.population(size, dist, WAVLTreeBenchmark.SEED)) {
+				tree.insert(key, "0");
+			}
+			probes = KeyStreams.presentKeys(size, WAVLTreeBenchmark.BATCH, dist, WAVLTreeBenchmark.SEED + 1);
+		}
+
+		int nextKey() {
+			cursor = (cursor + 1) & (WAVLTreeBenchmark.BATCH - 1);
+			return probes[cursor];
+		}
+	}
+
+	@Benchmark
+	public int deleteInsert(Counters s) {
+		int key = s.nextKey();
+		int ops = s.tree.delete(key);
+		return ops + s.tree.insert(key, "1");
+	}
+
+	@Benchmark
+	public String put(Counters s) {
+		return s.tree.put(s.nextKey(), "1");
+	}
+
+	@Benchmark
+	public String merge(Counters s) {
+		return s.tree.merge(s.nextKey(), "1", (a, b) -> b);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options opt = new OptionsBuilder()
+				.include(UpsertBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(opt).run();
+	}
+}
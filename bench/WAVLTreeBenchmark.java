@@ -0,0 +1,316 @@
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ *
+ * WAVLTreeBenchmark
+ *
+ * JMH suite for the WAVLTree hot paths, with java.util.TreeMap as a
+ * baseline and ArrayWAVLTree (struct-of-arrays layout) side by side.
+ * Run main() to get the gc profiler (allocation rate) attached.
+ *
+ * read benchmarks (search, select, min, max, keysToArray, infoToArray) run
+ * against a tree populated with size keys. write benchmarks (insert, delete)
+ * mutate the tree, so they run in single shot mode over BATCH operations and
+ * the tree is rebuilt before each iteration.
+ *
+ */
+
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class WAVLTreeBenchmark {
+
+	/**
+	 * number of probes per read state, and of mutations per write iteration
+	 */
+	public static final int BATCH = 1 << 12;
+
+	static final long SEED = 0x5EED;
+
+	static String valueOf(int key) {
+		return Integer.toString(key);
+	}
+
+	/**
+	 * a populated WAVLTree and TreeMap, plus probe streams over them
+	 */
+	@State(Scope.Benchmark)
+	public static class ReadState {
+
+		@Param({ "1000", "10000", "100000", "1000000", "10000000" })
+		public int size;
+
+		@Param({ "SEQUENTIAL", "RANDOM", "ZIPFIAN" })
+		public KeyStreams.Distribution dist;
+
+		WAVLTree tree;
+		ArrayWAVLTree arrayTree;
+		TreeMap<Integer, String> map;
+		int[] keyProbes;
+		int[] rankProbes;
+		int cursor;
+
+		@Setup(Level.Trial)
+		public void setup() {
+			tree = new WAVLTree();
+			arrayTree = new ArrayWAVLTree(size);
+			map = new TreeMap<Integer, String>();
+			for (int key : KeyStreams.population(size, dist, SEED)) {
+				tree.insert(key, valueOf(key));
+				arrayTree.insert(key, valueOf(key));
+				map.put(key, valueOf(key));
+			}
+			keyProbes = KeyStreams.presentKeys(size, BATCH, dist, SEED + 1);
+			rankProbes = KeyStreams.indices(size, BATCH, dist, SEED + 2);
+			for (int i = 0; i < BATCH; i++) {
+				rankProbes[i]++; // select is 1-based
+			}
+		}
+
+		int nextKey() {
+			cursor = (cursor + 1) & (BATCH - 1);
+			return keyProbes[cursor];
+		}
+
+		int nextRank() {
+			cursor = (cursor + 1) & (BATCH - 1);
+			return rankProbes[cursor];
+		}
+	}
+
+	/**
+	 * a tree rebuilt before every iteration, plus BATCH keys to insert (all
+	 * absent) and BATCH keys to delete (all present)
+	 */
+	@State(Scope.Thread)
+	public static class WriteState {
+
+		@Param({ "1000", "10000", "100000", "1000000", "10000000" })
+		public int size;
+
+		@Param({ "SEQUENTIAL", "RANDOM", "ZIPFIAN" })
+		public KeyStreams.Distribution dist;
+
+		int[] population;
+		int[] toInsert;
+		int[] toDelete;
+		WAVLTree tree;
+		ArrayWAVLTree arrayTree;
+		TreeMap<Integer, String> map;
+
+		@Setup(Level.Trial)
+		public void setupTrial() {
+			population = KeyStreams.population(size, dist, SEED);
+			int batch = Math.min(BATCH, size);
+			toInsert = KeyStreams.absentKeys(size, batch, dist, SEED + 3);
+			toDelete = new int[batch];
+			int[] deleteIdx = KeyStreams.absentKeys(size, batch, dist, SEED + 4);
+			for (int i = 0; i < batch; i++) {
+				toDelete[i] = deleteIdx[i] - 1; // odd -> its even neighbour
+			}
+		}
+
+		@Setup(Level.Iteration)
+		public void setupIteration() {
+			tree = new WAVLTree();
+			arrayTree = new ArrayWAVLTree(size + toInsert.length);
+			map = new TreeMap<Integer, String>();
+			for (int key : population) {
+				tree.insert(key, valueOf(key));
+				arrayTree.insert(key, valueOf(key));
+				map.put(key, valueOf(key));
+			}
+		}
+	}
+
+	// ================= reads
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public String search(ReadState s) {
+		return s.tree.search(s.nextKey());
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public String searchArray(ReadState s) {
+		return s.arrayTree.search(s.nextKey());
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public String searchTreeMap(ReadState s) {
+		return s.map.get(s.nextKey());
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public String select(ReadState s) {
+		return s.tree.select(s.nextRank());
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public String selectArray(ReadState s) {
+		return s.arrayTree.select(s.nextRank());
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public void minMax(ReadState s, Blackhole bh) {
+		bh.consume(s.tree.min());
+		bh.consume(s.tree.max());
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public void minMaxTreeMap(ReadState s, Blackhole bh) {
+		bh.consume(s.map.firstEntry().getValue());
+		bh.consume(s.map.lastEntry().getValue());
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public int[] keysToArray(ReadState s) {
+		return s.tree.keysToArray();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public int[] keysToArrayArray(ReadState s) {
+		return s.arrayTree.keysToArray();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public String[] infoToArray(ReadState s) {
+		return s.tree.infoToArray();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public Object[] valuesTreeMap(ReadState s) {
+		return s.map.values().toArray();
+	}
+
+	// ================= writes
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Warmup(iterations = 5, batchSize = 1)
+	@Measurement(iterations = 20, batchSize = 1)
+	public int insert(WriteState s) {
+		int ops = 0;
+		for (int key : s.toInsert) {
+			ops += s.tree.insert(key, valueOf(key));
+		}
+		return ops;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Warmup(iterations = 5, batchSize = 1)
+	@Measurement(iterations = 20, batchSize = 1)
+	public int insertArray(WriteState s) {
+		int ops = 0;
+		for (int key : s.toInsert) {
+			ops += s.arrayTree.insert(key, valueOf(key));
+		}
+		return ops;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Warmup(iterations = 5, batchSize = 1)
+	@Measurement(iterations = 20, batchSize = 1)
+	public void insertTreeMap(WriteState s, Blackhole bh) {
+		for (int key : s.toInsert) {
+			bh.consume(s.map.put(key, valueOf(key)));
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Warmup(iterations = 5, batchSize = 1)
+	@Measurement(iterations = 20, batchSize = 1)
+	public int delete(WriteState s) {
+		int ops = 0;
+		for (int key : s.toDelete) {
+			ops += s.tree.delete(key);
+		}
+		return ops;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Warmup(iterations = 5, batchSize = 1)
+	@Measurement(iterations = 20, batchSize = 1)
+	public int deleteArray(WriteState s) {
+		int ops = 0;
+		for (int key : s.toDelete) {
+			ops += s.arrayTree.delete(key);
+		}
+		return ops;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Warmup(iterations = 5, batchSize = 1)
+	@Measurement(iterations = 20, batchSize = 1)
+	public void deleteTreeMap(WriteState s, Blackhole bh) {
+		for (int key : s.toDelete) {
+			bh.consume(s.map.remove(key));
+		}
+	}
+
+	/**
+	 * runs the whole suite with the gc profiler, so every result comes with
+	 * gc.alloc.rate and gc.alloc.rate.norm (bytes per operation).
+	 * extra arguments are passed as a benchmark include regexp.
+	 */
+	public static void main(String[] args) throws RunnerException {
+		String include = (args.length > 0) ? args[0] : WAVLTreeBenchmark.class.getSimpleName();
+		Options opt = new OptionsBuilder()
+				.include(include)
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(opt).run();
+	}
+}